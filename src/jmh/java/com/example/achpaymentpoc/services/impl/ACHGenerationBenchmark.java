@@ -0,0 +1,126 @@
+package com.example.achpaymentpoc.services.impl;
+
+import com.example.achpaymentpoc.batch.ACHBatch;
+import com.example.achpaymentpoc.batch.ACHBatchKey;
+import com.example.achpaymentpoc.batch.ACHBatcher;
+import com.example.achpaymentpoc.batch.ACHFileSplitter;
+import com.example.achpaymentpoc.batch.ACHFileTotals;
+import com.example.achpaymentpoc.dto.ACHPaymentRequest;
+import com.example.achpaymentpoc.nacha.ACHRecordWriter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks {@link ACHServiceImpl#generateACHFile} and each record generator it is built from.
+ * Every benchmark writes {@code entries} records to a discarding stream, so the scores cover encoding only.
+ * <p>
+ * Inputs stay within the NACHA field widths at every size: amounts are small enough for the 12 digit totals, batches
+ * hold at most {@link ACHBatch#MAX_ENTRIES} entries and the whole run is split into files of {@link #FILE_ENTRIES}
+ * entries, as {@code writeACHFiles} does. Headers use a fixed file ID modifier, so no run uses up the day's 36.
+ * <p>
+ * Run with {@code mvn -Pbenchmark test-compile exec:exec}; the {@code gc} profiler reports allocation per operation
+ * and results are written to {@code target/jmh-result.json}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 3)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx12g"})
+public class ACHGenerationBenchmark {
+
+    private static final int FILE_ENTRIES = 1000000; // keeps the 6 digit block count of each file in range
+
+    @Param({"1", "10000", "1000000", "10000000"})
+    private int entries;
+
+    private final ACHServiceImpl achService = new ACHServiceImpl();
+    private List<ACHPaymentRequest> paymentRequests;
+    private ACHBatch batch; // the first MAX_ENTRIES requests, rendered repeatedly for larger runs
+    private ACHFileTotals totals;
+    private ACHRecordWriter writer;
+
+    @Setup(Level.Trial)
+    public void createRequests() {
+        paymentRequests = new ArrayList<>(entries);
+        for (int i = 0; i < entries; i++) {
+            int originator = i % 200; // a few hundred originators, like a real run
+            paymentRequests.add(new ACHPaymentRequest("Company " + originator, 123456789L, 900000000L + originator,
+                    "Receiver " + i, String.valueOf(100000000 + (i % 900000000)), String.valueOf(1000000L + i),
+                    1 + (i % 1000) / 100.0, i % 4 == 0 ? "credit" : "debit", "USA Bank"));
+        }
+        batch = new ACHBatch(ACHBatchKey.of(paymentRequests.get(0)));
+        paymentRequests.subList(0, Math.min(entries, ACHBatch.MAX_ENTRIES)).forEach(batch::add);
+        totals = new ACHFileTotals();
+        totals.add(batch);
+        writer = new ACHRecordWriter(OutputStream.nullOutputStream());
+    }
+
+    @Benchmark
+    public void generateACHFile() throws IOException {
+        ACHRecordWriter out = new ACHRecordWriter(OutputStream.nullOutputStream());
+        for (List<ACHBatch> file : ACHFileSplitter.split(ACHBatcher.group(paymentRequests), FILE_ENTRIES, Long.MAX_VALUE)) {
+            int entryCount = file.stream().mapToInt(ACHBatch::getEntryCount).sum();
+            achService.generateACHFile(paymentRequests.get(0), 'A', file, entryCount, out);
+        }
+        out.flush();
+    }
+
+    @Benchmark
+    public ACHRecordWriter generateFileHeaderRecord() throws IOException {
+        ACHPaymentRequest request = paymentRequests.get(0);
+        for (int i = 0; i < entries; i++) {
+            achService.generateFileHeaderRecord(request, 'A', writer);
+        }
+        return writer;
+    }
+
+    @Benchmark
+    public ACHRecordWriter generateBatchHeaderRecord() throws IOException {
+        for (int i = 0; i < entries; i++) {
+            achService.generateBatchHeaderRecord(batch.getKey(), i, writer);
+        }
+        return writer;
+    }
+
+    @Benchmark
+    public int generateEntryDetailRecords() throws IOException {
+        int traceSequence = 0;
+        for (int from = 0; from < entries; from += batch.getEntryCount()) {
+            traceSequence = achService.generateEntryDetailRecords(batch, 0, Math.min(batch.getEntryCount(), entries - from), 0, writer);
+        }
+        return traceSequence;
+    }
+
+    @Benchmark
+    public ACHRecordWriter generateBatchControlRecord() throws IOException {
+        for (int i = 0; i < entries; i++) {
+            achService.generateBatchControlRecord(batch, i, writer);
+        }
+        return writer;
+    }
+
+    @Benchmark
+    public ACHRecordWriter generateFileControlRecord() throws IOException {
+        for (int i = 0; i < entries; i++) {
+            achService.generateFileControlRecord(totals, writer);
+        }
+        return writer;
+    }
+}
@@ -0,0 +1,113 @@
+package com.example.achpaymentpoc.batch;
+
+import com.example.achpaymentpoc.dto.ACHPaymentRequest;
+import com.example.achpaymentpoc.nacha.ACHAmounts;
+import com.example.achpaymentpoc.nacha.ACHRecordWriter;
+import lombok.Getter;
+
+/**
+ * A group of entries sharing one {@link ACHBatchKey}, together with the control totals of its batch control record.
+ * Entries are held in an {@link ACHEntryStore} column store, and totals are kept as primitives updated as entries are
+ * added. Amounts are in cents.
+ */
+@Getter
+public class ACHBatch {
+
+    public static final long ENTRY_HASH_MODULUS = 10000000000L; // entry hash keeps the rightmost 10 digits
+    public static final int MAX_ENTRIES = 999999; // entry/addenda count is a 6 digit field
+
+    private final ACHBatchKey key;
+    private final ACHEntryStore entries; // null for totals-only batches
+    private final int firstEntry; // index of the first entry in the store, non-zero for slices
+    private int entryCount;
+    private long entryHashSum; // unreduced sum of the receiving DFI identifications
+    private long totalDebitAmount;
+    private long totalCreditAmount;
+
+    public ACHBatch(ACHBatchKey key) {
+        this(key, new ACHEntryStore());
+    }
+
+    private ACHBatch(ACHBatchKey key, ACHEntryStore entries) {
+        this(key, entries, 0);
+    }
+
+    private ACHBatch(ACHBatchKey key, ACHEntryStore entries, int firstEntry) {
+        this.key = key;
+        this.entries = entries;
+        this.firstEntry = firstEntry;
+    }
+
+    /**
+     * A batch that only keeps control totals, for entries that are written as soon as they are read.
+     */
+    public static ACHBatch totalsOnly(ACHBatchKey key) {
+        return new ACHBatch(key, null);
+    }
+
+    /**
+     * A totals-only batch restored from previously recorded control totals.
+     */
+    public static ACHBatch restore(ACHBatchKey key, int entryCount, long entryHashSum, long totalDebitAmount, long totalCreditAmount) {
+        ACHBatch batch = totalsOnly(key);
+        batch.entryCount = entryCount;
+        batch.entryHashSum = entryHashSum;
+        batch.totalDebitAmount = totalDebitAmount;
+        batch.totalCreditAmount = totalCreditAmount;
+        return batch;
+    }
+
+    /**
+     * Entries {@code [from, to)} of this batch as a batch of their own, sharing the entry store and with control totals
+     * summed over the range. Slices are read only.
+     */
+    public ACHBatch slice(int from, int to) {
+        if (from < 0 || to > entryCount || from > to) {
+            throw new IndexOutOfBoundsException("Slice [" + from + ", " + to + ") of a batch of " + entryCount + " entries");
+        }
+        int start = firstEntry + from, end = firstEntry + to;
+        ACHBatch slice = new ACHBatch(key, entries, start);
+        slice.entryCount = to - from;
+        slice.entryHashSum = entries.sumReceivingDFIs(start, end);
+        if (key.isDebits()) {
+            slice.totalDebitAmount = entries.sumAmounts(start, end);
+        } else {
+            slice.totalCreditAmount = entries.sumAmounts(start, end);
+        }
+        return slice;
+    }
+
+    public void add(ACHPaymentRequest request) {
+        int index = entries.add(request);
+        accumulate(entries.receivingDFI(index), entries.amount(index));
+    }
+
+    /**
+     * Adds a request to the control totals only, for totals-only batches.
+     */
+    public void accumulate(ACHPaymentRequest request) {
+        accumulate(ACHRecordWriter.parseDigits(request.getReceiverRoutingNumber(), 0, 8), ACHAmounts.toCents(request.getAmount()));
+    }
+
+    private void accumulate(long receivingDFIIdentification, long amount) {
+        entryCount++;
+        entryHashSum += receivingDFIIdentification;
+        if (key.isDebits()) {
+            totalDebitAmount += amount;
+        } else {
+            totalCreditAmount += amount;
+        }
+    }
+
+    /**
+     * Whether an entry of {@code amount} cents keeps this batch's debit or credit total within
+     * {@link ACHAmounts#MAX_TOTAL}.
+     */
+    public boolean hasRoomFor(long amount) {
+        return (key.isDebits() ? totalDebitAmount : totalCreditAmount) <= ACHAmounts.MAX_TOTAL - amount;
+    }
+
+    public long getEntryHash() {
+        return entryHashSum % ENTRY_HASH_MODULUS;
+    }
+}
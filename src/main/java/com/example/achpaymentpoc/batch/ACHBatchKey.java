@@ -0,0 +1,51 @@
+package com.example.achpaymentpoc.batch;
+
+import com.example.achpaymentpoc.dto.ACHPaymentRequest;
+import lombok.Value;
+
+import java.util.Objects;
+
+/**
+ * Fields that must be identical for entries to share a batch header: the originator, the SEC code,
+ * the effective entry date and the service class.
+ */
+@Value
+public class ACHBatchKey {
+
+    public static final int SERVICE_CLASS_CREDITS = 220; // credits only
+    public static final int SERVICE_CLASS_DEBITS = 225; // debits only
+    public static final String STANDARD_ENTRY_CLASS_PPD = "PPD";
+    public static final String DEFAULT_EFFECTIVE_ENTRY_DATE = "220214"; // YYMMDD
+
+    String originatorCName;
+    long originatorRoutingNumber;
+    long originatorAccountNumber;
+    String standardEntryClassCode;
+    String effectiveEntryDate;
+    int serviceClassCode;
+
+    public static ACHBatchKey of(ACHPaymentRequest request) {
+        return new ACHBatchKey(request.getOriginatorCName(), request.getOriginatorRoutingNumber(),
+                request.getOriginatorAccountNumber(), STANDARD_ENTRY_CLASS_PPD, DEFAULT_EFFECTIVE_ENTRY_DATE,
+                isDebit(request) ? SERVICE_CLASS_DEBITS : SERVICE_CLASS_CREDITS);
+    }
+
+    /**
+     * Cheap check used to keep extending the current batch without building a new key for every entry.
+     * SEC code and effective entry date are not carried on the request yet, so they always match.
+     */
+    public boolean matches(ACHPaymentRequest request) {
+        return originatorAccountNumber == request.getOriginatorAccountNumber()
+                && originatorRoutingNumber == request.getOriginatorRoutingNumber()
+                && serviceClassCode == (isDebit(request) ? SERVICE_CLASS_DEBITS : SERVICE_CLASS_CREDITS)
+                && Objects.equals(originatorCName, request.getOriginatorCName());
+    }
+
+    public boolean isDebits() {
+        return serviceClassCode == SERVICE_CLASS_DEBITS;
+    }
+
+    public static boolean isDebit(ACHPaymentRequest request) {
+        return "debit".equalsIgnoreCase(request.getTransactionType());
+    }
+}
@@ -0,0 +1,54 @@
+package com.example.achpaymentpoc.batch;
+
+import com.example.achpaymentpoc.dto.ACHPaymentRequest;
+import com.example.achpaymentpoc.nacha.ACHAmounts;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Groups payment requests into multi-entry batches by {@link ACHBatchKey}.
+ */
+public final class ACHBatcher {
+
+    private ACHBatcher() {
+    }
+
+    /**
+     * Groups every request into its batch. Batches keep the order in which they were opened and entries keep their
+     * submission order, so the same input always produces the same file. A key continues in a new batch once its batch
+     * holds {@link ACHBatch#MAX_ENTRIES} entries or the next amount would take its total past
+     * {@link ACHAmounts#MAX_TOTAL}.
+     */
+    public static Collection<ACHBatch> group(List<ACHPaymentRequest> paymentRequests) {
+        return group(paymentRequests, ACHBatch.MAX_ENTRIES);
+    }
+
+    static Collection<ACHBatch> group(List<ACHPaymentRequest> paymentRequests, int maxEntries) {
+        // a few hundred originators is typical, size the table for that instead of for the entry count
+        Map<ACHBatchKey, ACHBatch> open = new LinkedHashMap<>(Math.min(paymentRequests.size(), 1024) * 2);
+        List<ACHBatch> batches = new ArrayList<>();
+        ACHBatch current = null;
+        for (ACHPaymentRequest request : paymentRequests) {
+            // consecutive entries usually share a batch, skip the key allocation and hash lookup for those
+            if (current == null || !current.getKey().matches(request)) {
+                current = open.computeIfAbsent(ACHBatchKey.of(request), key -> newBatch(key, batches));
+            }
+            if (current.getEntryCount() == maxEntries || !current.hasRoomFor(ACHAmounts.toCents(request.getAmount()))) {
+                current = newBatch(current.getKey(), batches);
+                open.put(current.getKey(), current);
+            }
+            current.add(request);
+        }
+        return batches;
+    }
+
+    private static ACHBatch newBatch(ACHBatchKey key, List<ACHBatch> batches) {
+        ACHBatch batch = new ACHBatch(key);
+        batches.add(batch);
+        return batch;
+    }
+}
@@ -0,0 +1,102 @@
+package com.example.achpaymentpoc.batch;
+
+import com.example.achpaymentpoc.dto.ACHPaymentRequest;
+import com.example.achpaymentpoc.nacha.ACHAmounts;
+import com.example.achpaymentpoc.nacha.ACHRecordWriter;
+
+import java.util.Arrays;
+
+/**
+ * Column store for the entries of one batch.
+ * <p>
+ * Only the per-entry fields of an entry detail record are kept, in primitive arrays: amounts in cents, the 8 digit
+ * receiving DFI identification and its check digit, and the receiver account and name already encoded as the
+ * fixed-width ASCII bytes they are written as. Originator fields are the same for the whole batch and live once in its
+ * {@link ACHBatchKey}. An entry costs about 52 bytes and no objects, instead of a request object and its strings.
+ */
+public class ACHEntryStore {
+
+    public static final int ACCOUNT_WIDTH = 17;
+    public static final int NAME_WIDTH = 22;
+    public static final int TEXT_WIDTH = ACCOUNT_WIDTH + NAME_WIDTH; // account then name, per entry
+    private static final int INITIAL_CAPACITY = 16;
+
+    private int size;
+    private long[] amounts = new long[INITIAL_CAPACITY]; // cents
+    private int[] receivingDFIs = new int[INITIAL_CAPACITY];
+    private byte[] checkDigits = new byte[INITIAL_CAPACITY];
+    private byte[] text = new byte[INITIAL_CAPACITY * TEXT_WIDTH];
+
+    /**
+     * Encodes and appends a request, returning its index.
+     */
+    public int add(ACHPaymentRequest request) {
+        String routingNumber = request.getReceiverRoutingNumber();
+        int receivingDFI = (int) ACHRecordWriter.parseDigits(routingNumber, 0, 8); // rejects bad input before growing
+        if (size == amounts.length) {
+            grow();
+        }
+        int index = size;
+        amounts[index] = ACHAmounts.toCents(request.getAmount());
+        receivingDFIs[index] = receivingDFI;
+        checkDigits[index] = routingNumber.length() > 8 ? ACHRecordWriter.asciiChar(routingNumber.charAt(8)) : (byte) ' ';
+        ACHRecordWriter.encodeAlpha(request.getReceiverAccountNumber(), 0, text, index * TEXT_WIDTH, ACCOUNT_WIDTH);
+        ACHRecordWriter.encodeAlpha(request.getReceiverName(), 0, text, index * TEXT_WIDTH + ACCOUNT_WIDTH, NAME_WIDTH);
+        size++;
+        return index;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public long amount(int index) {
+        return amounts[index];
+    }
+
+    public int receivingDFI(int index) {
+        return receivingDFIs[index];
+    }
+
+    public byte checkDigit(int index) {
+        return checkDigits[index];
+    }
+
+    /**
+     * The text column, holding {@link #TEXT_WIDTH} bytes per entry starting at {@link #textOffset}.
+     */
+    public byte[] text() {
+        return text;
+    }
+
+    public int textOffset(int index) {
+        return index * TEXT_WIDTH;
+    }
+
+    public long sumAmounts(int from, int to) {
+        long sum = 0;
+        for (int i = from; i < to; i++) {
+            sum += amounts[i];
+        }
+        return sum;
+    }
+
+    public long sumReceivingDFIs(int from, int to) {
+        long sum = 0;
+        for (int i = from; i < to; i++) {
+            sum += receivingDFIs[i];
+        }
+        return sum;
+    }
+
+    private void grow() {
+        int capacity = amounts.length * 2;
+        if (capacity < 0 || (long) capacity * TEXT_WIDTH > Integer.MAX_VALUE - 8) {
+            throw new IllegalStateException("ACH batch cannot hold more than " + size + " entries");
+        }
+        amounts = Arrays.copyOf(amounts, capacity);
+        receivingDFIs = Arrays.copyOf(receivingDFIs, capacity);
+        checkDigits = Arrays.copyOf(checkDigits, capacity);
+        text = Arrays.copyOf(text, capacity * TEXT_WIDTH);
+    }
+}
@@ -0,0 +1,63 @@
+package com.example.achpaymentpoc.batch;
+
+import com.example.achpaymentpoc.nacha.ACHRecordWriter;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Spreads batches over as many files as needed to keep every file within a bank's entry and size limits, and its debit
+ * and credit totals within the 12 digits of the file control record.
+ */
+public final class ACHFileSplitter {
+
+    private static final int FILE_OVERHEAD_RECORDS = 2; // file header and file control
+    private static final int BATCH_OVERHEAD_RECORDS = 2; // batch header and batch control
+
+    private ACHFileSplitter() {
+    }
+
+    /**
+     * Fills files in order, slicing a batch where it would overflow the current file so entries keep their order.
+     * {@code maxRecords} is rounded down to whole blocks, so padding the last block never pushes a file over it.
+     */
+    public static List<List<ACHBatch>> split(Collection<ACHBatch> batches, int maxEntries, long maxRecords) {
+        long budget = maxRecords / ACHRecordWriter.BLOCKING_FACTOR * ACHRecordWriter.BLOCKING_FACTOR;
+        if (maxEntries < 1 || budget < FILE_OVERHEAD_RECORDS + BATCH_OVERHEAD_RECORDS + 1) {
+            throw new IllegalArgumentException("ACH file limits leave no room for an entry: " + maxEntries
+                    + " entries, " + maxRecords + " records");
+        }
+        List<List<ACHBatch>> files = new ArrayList<>();
+        List<ACHBatch> file = new ArrayList<>();
+        ACHFileTotals totals = new ACHFileTotals();
+        int entries = 0;
+        long records = FILE_OVERHEAD_RECORDS;
+        for (ACHBatch batch : batches) {
+            int from = 0;
+            while (from < batch.getEntryCount()) {
+                long room = Math.min(maxEntries - entries, budget - records - BATCH_OVERHEAD_RECORDS);
+                int to = (int) Math.min(batch.getEntryCount(), from + Math.max(room, 0));
+                ACHBatch piece = from == 0 && to == batch.getEntryCount() ? batch : batch.slice(from, to);
+                if (room <= 0 || !file.isEmpty() && !totals.hasRoomFor(piece)) {
+                    // a batch is within the totals limit on its own, so it always fits a new file
+                    files.add(file);
+                    file = new ArrayList<>();
+                    totals = new ACHFileTotals();
+                    entries = 0;
+                    records = FILE_OVERHEAD_RECORDS;
+                    continue;
+                }
+                file.add(piece);
+                totals.add(piece);
+                entries += to - from;
+                records += BATCH_OVERHEAD_RECORDS + to - from;
+                from = to;
+            }
+        }
+        if (!file.isEmpty()) {
+            files.add(file);
+        }
+        return files;
+    }
+}
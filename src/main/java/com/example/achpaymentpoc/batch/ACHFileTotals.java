@@ -0,0 +1,60 @@
+package com.example.achpaymentpoc.batch;
+
+import com.example.achpaymentpoc.nacha.ACHAmounts;
+import com.example.achpaymentpoc.nacha.ACHRecordWriter;
+import lombok.Getter;
+
+/**
+ * Running file control totals: batch count, entry count, entry hash and debit/credit sums.
+ */
+@Getter
+public class ACHFileTotals {
+
+    private int batchCount;
+    private int entryCount;
+    private long entryHashSum;
+    private long totalDebitAmount;
+    private long totalCreditAmount;
+
+    public void add(ACHBatch batch) {
+        batchCount++;
+        entryCount += batch.getEntryCount();
+        entryHashSum = (entryHashSum + batch.getEntryHash()) % ACHBatch.ENTRY_HASH_MODULUS;
+        totalDebitAmount += batch.getTotalDebitAmount();
+        totalCreditAmount += batch.getTotalCreditAmount();
+    }
+
+    /**
+     * Whether adding {@code batch} keeps the file's debit and credit totals within {@link ACHAmounts#MAX_TOTAL}.
+     */
+    public boolean hasRoomFor(ACHBatch batch) {
+        return totalDebitAmount <= ACHAmounts.MAX_TOTAL - batch.getTotalDebitAmount()
+                && totalCreditAmount <= ACHAmounts.MAX_TOTAL - batch.getTotalCreditAmount();
+    }
+
+    /**
+     * Whether an entry of {@code amount} cents added to {@code openBatch}, a batch not yet added to the file, keeps the
+     * file's debit or credit total within {@link ACHAmounts#MAX_TOTAL}.
+     */
+    public boolean hasRoomFor(ACHBatch openBatch, long amount) {
+        long total = openBatch.getKey().isDebits()
+                ? totalDebitAmount + openBatch.getTotalDebitAmount()
+                : totalCreditAmount + openBatch.getTotalCreditAmount();
+        return total <= ACHAmounts.MAX_TOTAL - amount;
+    }
+
+    /**
+     * Records before block padding: file header and control, a header and control per batch, and the entries.
+     */
+    public long getRecordCount() {
+        return 2 + 2L * batchCount + entryCount;
+    }
+
+    public long getBlockCount() {
+        return (getRecordCount() + ACHRecordWriter.BLOCKING_FACTOR - 1) / ACHRecordWriter.BLOCKING_FACTOR;
+    }
+
+    public long getEntryHash() {
+        return entryHashSum % ACHBatch.ENTRY_HASH_MODULUS;
+    }
+}
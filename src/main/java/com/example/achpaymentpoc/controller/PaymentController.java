@@ -1,19 +1,50 @@
 package com.example.achpaymentpoc.controller;
 
+import com.example.achpaymentpoc.dto.ACHDailyFileStatus;
 import com.example.achpaymentpoc.dto.ACHPaymentRequest;
+import com.example.achpaymentpoc.idempotency.ACHDuplicateIndex;
+import com.example.achpaymentpoc.idempotency.ACHIdempotencyCache;
+import com.example.achpaymentpoc.idempotency.DuplicatePaymentException;
+import com.example.achpaymentpoc.idempotency.IdempotencyKeyReusedException;
+import com.example.achpaymentpoc.ingest.ACHPaymentRequestReader;
+import com.example.achpaymentpoc.jobs.ACHGenerationJob;
+import com.example.achpaymentpoc.jobs.ACHGenerationJobService;
+import com.example.achpaymentpoc.nacha.ACHFileReport;
+import com.example.achpaymentpoc.services.impl.ACHDailyFileBuilder;
 import com.example.achpaymentpoc.services.impl.ACHServiceImpl;
+import com.example.achpaymentpoc.trace.ACHTraceIndex;
+import com.example.achpaymentpoc.trace.ACHTraceRecord;
+import com.example.achpaymentpoc.upload.ACHUploadResult;
+import com.example.achpaymentpoc.validation.ACHPaymentValidator;
+import com.example.achpaymentpoc.validation.ACHValidationException;
+import com.example.achpaymentpoc.validation.ACHValidationReport;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.media.Content;
 import io.swagger.v3.oas.annotations.media.ExampleObject;
 import io.swagger.v3.oas.annotations.responses.ApiResponse;
 import io.swagger.v3.oas.annotations.responses.ApiResponses;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.RejectedExecutionException;
 
 @RestController
 @RequestMapping("/payment")
@@ -22,6 +53,27 @@ public class PaymentController {
     @Autowired
     private ACHServiceImpl achService;
 
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private ACHGenerationJobService jobService;
+
+    @Autowired
+    private ACHDailyFileBuilder dailyFileBuilder;
+
+    @Autowired
+    private ACHIdempotencyCache idempotencyCache;
+
+    @Autowired
+    private ACHDuplicateIndex duplicateIndex;
+
+    @Autowired
+    private ACHTraceIndex traceIndex;
+
+    @Value("${ach.output.dir:ach-output}")
+    private String outputDirectory;
+
 
     @Operation(summary = "Generate NACHA file format json", description = "Generate NACHA file format json from the given ACH payment requests.")
     @ApiResponses(value = {
@@ -33,39 +85,184 @@ public class PaymentController {
                             examples = @ExampleObject(value = "{\"originatorCName\": \"Company A\", \"originatorRoutingNumber\": \"123456789\", \"originatorAccountNumber\": \"987654321\", \"receiverName\": \"Vendor B\", \"receiverRoutingNumber\": \"987654321\", \"receiverAccountNumber\": \"123456789\", \"amount\": 1000.00, \"transactionType\": \"debit\", \"originatorBDestination\": \"USA Bank\"}")
                     )
             ),
+            @ApiResponse(
+                    responseCode = "400",
+                    description = "Payment requests failed validation, nothing was generated"
+            ),
             @ApiResponse(
                     responseCode = "500",
                     description = "Failed to generate NACHA file"
             )
     })
     @PostMapping("/ach")
-    public ResponseEntity<String> generateNACHAFile(@RequestBody List<ACHPaymentRequest> paymentRequests) {
+    public ResponseEntity<?> generateNACHAFile(@RequestBody List<ACHPaymentRequest> paymentRequests,
+                                                                   @RequestHeader(value = ACHIdempotencyCache.HEADER, required = false) String idempotencyKey,
+                                                                   @RequestParam(defaultValue = "false") boolean allowDuplicates) throws IOException {
+        // Once the first records are flushed the status is committed, so reject invalid or empty requests before streaming
+        ACHValidationReport report = achService.validatePaymentRequests(paymentRequests, ACHPaymentValidator.Mode.COLLECT_ALL);
+        if (report.isValid()) {
+            report = ACHPaymentValidator.validateFileTotals(paymentRequests, 0, 0); // the streamed file cannot be split
+        }
+        if (!report.isValid()) {
+            return ResponseEntity.badRequest().body(report);
+        }
+        if (idempotencyKey != null) {
+            // Keep the generated file so a retry with the same key gets exactly the same bytes
+            Path file = idempotencyCache.execute("ach", idempotencyKey, fingerprint(paymentRequests), () -> {
+                Path target = idempotencyCache.resultFile("ach", idempotencyKey, ".txt");
+                return duplicateIndex.record(paymentRequests, allowDuplicates, () -> {
+                    achService.writeACHFile(paymentRequests, target.toString());
+                    return target;
+                });
+            });
+            return ResponseEntity.ok().contentType(MediaType.TEXT_PLAIN).body((StreamingResponseBody) out -> Files.copy(file, out));
+        }
+        // Stream the NACHA file to the client record by record instead of building it in memory
+        long[] reserved = duplicateIndex.reserve(paymentRequests, allowDuplicates);
+        return ResponseEntity.ok().contentType(MediaType.TEXT_PLAIN)
+                .body((StreamingResponseBody) out -> {
+                    try {
+                        achService.generateACHFile(paymentRequests, out);
+                    } catch (IOException | RuntimeException e) {
+                        duplicateIndex.release(reserved);
+                        throw e;
+                    }
+                });
+    }
+
+    @Operation(summary = "Generate NACHA file format in text file", description = "Generate NACHA file format in text file from the given ACH payment requests. Every run writes a new file, named after its Idempotency-Key when it has one so a retry returns the same file, and otherwise given a new unique name in the output directory. Returns the file path.")
+    @PostMapping("/generate")
+    public String generateTextFile(@RequestBody List<ACHPaymentRequest> paymentRequests,
+                                   @RequestHeader(value = ACHIdempotencyCache.HEADER, required = false) String idempotencyKey,
+                                   @RequestParam(defaultValue = "false") boolean allowDuplicates) {
         try {
-            // Generate NACHA file format
-            String nachaFile = achService.generateACHFile(paymentRequests);
-            // Return the NACHA file as a response
-            return ResponseEntity.ok(nachaFile);
+            String filePath = idempotencyKey == null ? newOutputFile("achFile") : idempotencyCache.resultFile("generate", idempotencyKey, ".txt").toString();
+            // Generate NACHA file format, once per idempotency key
+            return idempotent("generate", idempotencyKey, paymentRequests, () ->
+                    duplicateIndex.record(paymentRequests, allowDuplicates, () -> {
+                        achService.writeACHFile(paymentRequests, filePath);
+                        // Return the file path
+                        return filePath;
+                    }));
+        } catch (DuplicatePaymentException | IdempotencyKeyReusedException | ACHValidationException e) {
+            throw e;
         } catch (Exception e) {
             // Handle exceptions and return an error response
-            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body("Failed to generate NACHA file");
+            return "Failed to generate NACHA file";
         }
     }
 
-    @Operation(summary = "Generate NACHA file format in text file", description = "Generate NACHA file format in text file from the given ACH payment requests.")
-    @PostMapping("/generate")
-    public String generateTextFile(@RequestBody List<ACHPaymentRequest> paymentRequests) {
-        String filePath = "achFile.txt";
-        try {
-            // Generate NACHA file format
-            achService.writeACHFile(paymentRequests, filePath);
-            // Return the file path
+    @Operation(summary = "Generate NACHA files split to the bank's limits", description = "Generate one or more NACHA files into the output directory, splitting the run wherever a file would exceed the configured entry or size limit. Each file gets its own file ID modifier and can be gzip compressed as it is written.")
+    @PostMapping("/generate/files")
+    public ResponseEntity<List<String>> generateTextFiles(@RequestBody List<ACHPaymentRequest> paymentRequests,
+                                                         @RequestParam(defaultValue = "false") boolean gzip,
+                                                         @RequestHeader(value = ACHIdempotencyCache.HEADER, required = false) String idempotencyKey,
+                                                         @RequestParam(defaultValue = "false") boolean allowDuplicates) throws IOException {
+        if (paymentRequests == null || paymentRequests.isEmpty()) {
+            return ResponseEntity.badRequest().build();
+        }
+        return ResponseEntity.ok(idempotent("generate/files", idempotencyKey, paymentRequests, () ->
+                duplicateIndex.record(paymentRequests, allowDuplicates, () -> achService.writeACHFiles(paymentRequests, outputDirectory, gzip))));
+    }
+
+    // The streaming endpoints take neither an Idempotency-Key nor duplicate checks: both need every payment of the body
+    // before the first record is written, which is exactly what streaming avoids. Use /ach or /generate for those.
+
+    @Operation(summary = "Generate NACHA file format from a streamed request body", description = "Generate NACHA file format from a JSON array or newline delimited JSON body. Requests are parsed, validated and written one at a time so memory use does not grow with the number of entries. The first invalid request returns 400 when it comes before the first records are flushed and otherwise aborts the response, without writing any of its fields. Not checked for duplicate payments and not idempotent, since that needs the whole body up front.")
+    @PostMapping(value = "/ach/stream", consumes = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_NDJSON_VALUE})
+    public ResponseEntity<StreamingResponseBody> generateNACHAFileStreaming(InputStream body) {
+        return ResponseEntity.ok().contentType(MediaType.TEXT_PLAIN)
+                .body(out -> {
+                    try (ACHPaymentRequestReader paymentRequests = new ACHPaymentRequestReader(objectMapper, body)) {
+                        achService.generateACHFile(ACHPaymentValidator.validating(paymentRequests), out);
+                    }
+                });
+    }
+
+    @Operation(summary = "Generate NACHA file format in text file from a streamed request body", description = "Generate NACHA file format in text file from a JSON array or newline delimited JSON body without binding the whole list. Writes a new uniquely named file in the output directory and returns its path. Not checked for duplicate payments and not idempotent, since that needs the whole body up front.")
+    @PostMapping(value = "/generate/stream", consumes = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_NDJSON_VALUE})
+    public String generateTextFileStreaming(InputStream body) {
+        try (ACHPaymentRequestReader paymentRequests = new ACHPaymentRequestReader(objectMapper, body)) {
+            String filePath = newOutputFile("achFile");
+            achService.writeACHFile(ACHPaymentValidator.validating(paymentRequests), filePath);
             return filePath;
+        } catch (ACHValidationException e) {
+            throw e;
         } catch (Exception e) {
-            // Handle exceptions and return an error response
             return "Failed to generate NACHA file";
         }
     }
 
+    @Operation(summary = "Submit an ACH file generation job", description = "Queue a NACHA file generation and return its job right away. Returns 429 when the job queue is full. A retry with the same Idempotency-Key returns the original job.")
+    @PostMapping("/jobs")
+    public ResponseEntity<ACHGenerationJob> submitGenerationJob(@RequestBody List<ACHPaymentRequest> paymentRequests,
+                                                                @RequestHeader(value = ACHIdempotencyCache.HEADER, required = false) String idempotencyKey,
+                                                                @RequestParam(defaultValue = "false") boolean allowDuplicates) throws IOException {
+        try {
+            ACHGenerationJob job = idempotent("jobs", idempotencyKey, paymentRequests, () -> jobService.submit(paymentRequests, allowDuplicates));
+            return ResponseEntity.accepted().location(URI.create("/payment/jobs/" + job.getId())).body(job);
+        } catch (RejectedExecutionException e) {
+            return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS).header(HttpHeaders.RETRY_AFTER, "1").build();
+        }
+    }
+
+    @Operation(summary = "Get an ACH file generation job", description = "Get the status of a generation job.")
+    @GetMapping("/jobs/{jobId}")
+    public ResponseEntity<ACHGenerationJob> getGenerationJob(@PathVariable String jobId) {
+        return ResponseEntity.of(jobService.find(jobId));
+    }
+
+    @Operation(summary = "Download the file of an ACH file generation job", description = "Download the NACHA file of a completed generation job. Returns 409 while the job is still running.")
+    @GetMapping("/jobs/{jobId}/file")
+    public ResponseEntity<Resource> downloadGenerationJobFile(@PathVariable String jobId) {
+        Optional<ACHGenerationJob> job = jobService.find(jobId);
+        if (job.isEmpty()) {
+            return ResponseEntity.notFound().build();
+        }
+        if (job.get().getStatus() != ACHGenerationJob.Status.COMPLETED) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).build();
+        }
+        return ResponseEntity.ok().contentType(MediaType.TEXT_PLAIN)
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"ach-" + jobId + ".txt\"")
+                .body(new FileSystemResource(job.get().getFilePath()));
+    }
+
+    @Operation(summary = "Append payments to the day's ACH file", description = "Add ACH payment requests to the open daily file. Each payment is written and journaled on arrival, so the cost does not grow with the size of the file. Returns 400 with the validation report, and appends nothing, when any request is invalid, and 409 for payments generated before. A retry with the same Idempotency-Key returns the original status.")
+    @PostMapping("/daily/entries")
+    public ResponseEntity<ACHDailyFileStatus> appendDailyEntries(@RequestBody List<ACHPaymentRequest> paymentRequests,
+                                                                 @RequestHeader(value = ACHIdempotencyCache.HEADER, required = false) String idempotencyKey,
+                                                                 @RequestParam(defaultValue = "false") boolean allowDuplicates) throws IOException {
+        return ResponseEntity.ok(idempotent("daily/entries", idempotencyKey, paymentRequests, () ->
+                duplicateIndex.record(paymentRequests, allowDuplicates, () -> dailyFileBuilder.append(paymentRequests))));
+    }
+
+    @Operation(summary = "Get the day's ACH file totals", description = "Get the running batch count, entry count, entry hash and totals of the open daily file.")
+    @GetMapping("/daily")
+    public ResponseEntity<ACHDailyFileStatus> getDailyFile() {
+        return ResponseEntity.ok(dailyFileBuilder.status());
+    }
+
+    @Operation(summary = "Finalize the day's ACH file", description = "Write the open daily file with its control records at the cutoff into the output directory and start a new one. Takes an optional bare file name, a new unique name is used without one. Returns 400 for a name that is not a bare file name and 409 when the file already exists or nothing has been appended.")
+    @PostMapping("/daily/finalize")
+    public ResponseEntity<ACHDailyFileStatus> finalizeDailyFile(@RequestParam(required = false) String fileName) throws IOException {
+        // Callers only choose a name inside the output directory, and never one of an earlier file, whose trace numbers
+        // would be lost from the trace index
+        if (fileName == null) {
+            fileName = ACHServiceImpl.newFileName("achDailyFile") + ".txt";
+        } else if (fileName.isBlank() || fileName.contains("/") || fileName.contains("\\") || fileName.equals(".") || fileName.equals("..")) {
+            return ResponseEntity.badRequest().build();
+        }
+        Path target = Files.createDirectories(Paths.get(outputDirectory)).resolve(fileName);
+        if (Files.exists(target)) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).build();
+        }
+        try {
+            return ResponseEntity.ok(dailyFileBuilder.finalizeFile(target.toString()));
+        } catch (IllegalStateException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).build();
+        }
+    }
+
     @Operation(summary = "Validate ACH payment request", description = "Validate the given ACH payment request.")
     @PostMapping("/validate")
     public ResponseEntity<String> validateACHPaymentRequest(@RequestBody List<ACHPaymentRequest> achPaymentRequest) {
@@ -73,6 +270,27 @@ public class PaymentController {
         return ResponseEntity.ok(achService.validateACHPaymentRequest(achPaymentRequest).getBody());
     }
 
+    @Operation(summary = "Validate every ACH payment request", description = "Validate all given ACH payment requests and report the index, field and reason of each error. FAIL_FAST stops at the first invalid request, COLLECT_ALL reports everything.")
+    @PostMapping("/validate/report")
+    public ResponseEntity<ACHValidationReport> validateACHPaymentRequests(@RequestBody List<ACHPaymentRequest> paymentRequests,
+                                                                          @RequestParam(defaultValue = "COLLECT_ALL") ACHPaymentValidator.Mode mode) {
+        ACHValidationReport report = achService.validatePaymentRequests(paymentRequests, mode);
+        return report.isValid() ? ResponseEntity.ok(report) : ResponseEntity.badRequest().body(report);
+    }
+
+    @Operation(summary = "Verify an ACH file", description = "Read an ACH file and check its batch and file control records against totals recomputed from its entries.")
+    @PostMapping("/verify")
+    public ResponseEntity<ACHFileReport> verifyACHFile(@RequestBody FileUploadRequest request) throws IOException {
+        ACHFileReport report = achService.verifyACHFile(request.getFilePath());
+        return report.isValid() ? ResponseEntity.ok(report) : ResponseEntity.unprocessableEntity().body(report);
+    }
+
+    @Operation(summary = "Find a generated entry by trace number", description = "Look up the file, batch and line an entry detail record was generated at, for returns and notifications of change, and return the 94 byte record. Trace numbers only repeat once an originating DFI has used up its 9,999,999 sequences, the most recent file is returned then.")
+    @GetMapping("/trace/{traceNumber}")
+    public ResponseEntity<ACHTraceRecord> findTraceNumber(@PathVariable long traceNumber) throws IOException {
+        return ResponseEntity.of(traceIndex.find(traceNumber));
+    }
+
     @Operation(summary = "upload ACH payment file to the server", description = "upload ACH payment file to the server")
     @PostMapping("/upload")
     public ResponseEntity<String> uploadACHFile(@RequestBody FileUploadRequest request) throws IOException {
@@ -83,6 +301,43 @@ public class PaymentController {
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body("Failed to upload ACH file to the server");
         }
     }
+
+    @Operation(summary = "upload several ACH payment files to the server", description = "upload ACH payment files concurrently and report throughput and latency for each one")
+    @PostMapping("/upload/batch")
+    public ResponseEntity<List<ACHUploadResult>> uploadACHFiles(@RequestBody List<FileUploadRequest> requests) throws IOException {
+        return ResponseEntity.ok(achService.uploadFilesToServer(requests.stream().map(FileUploadRequest::getFilePath).toList()));
+    }
+
+    @ExceptionHandler(DuplicatePaymentException.class)
+    public ResponseEntity<Map<String, Object>> handleDuplicatePayments(DuplicatePaymentException e) {
+        return ResponseEntity.status(HttpStatus.CONFLICT).body(Map.of("error", e.getMessage(), "duplicateIndexes", e.getIndexes()));
+    }
+
+    @ExceptionHandler(ACHValidationException.class)
+    public ResponseEntity<ACHValidationReport> handleInvalidPayments(ACHValidationException e) {
+        // Explicit, since a streamed response that failed before its first flush already has text/plain set
+        return ResponseEntity.badRequest().contentType(MediaType.APPLICATION_JSON).body(e.getReport());
+    }
+
+    @ExceptionHandler(IdempotencyKeyReusedException.class)
+    public ResponseEntity<String> handleIdempotencyKeyReused(IdempotencyKeyReusedException e) {
+        return ResponseEntity.unprocessableEntity().body(e.getMessage());
+    }
+
+    // A new file in the output directory, so no generation overwrites an earlier file
+    private String newOutputFile(String prefix) throws IOException {
+        return Files.createDirectories(Paths.get(outputDirectory)).resolve(ACHServiceImpl.newFileName(prefix) + ".txt").toString();
+    }
+
+    private <T> T idempotent(String scope, String idempotencyKey, List<ACHPaymentRequest> paymentRequests,
+                             ACHIdempotencyCache.Action<T> action) throws IOException {
+        return idempotencyKey == null ? action.run() : idempotencyCache.execute(scope, idempotencyKey, fingerprint(paymentRequests), action);
+    }
+
+    // Every field of every request goes into the digest, so only an identical body counts as a retry
+    private byte[] fingerprint(List<ACHPaymentRequest> paymentRequests) throws IOException {
+        return ACHIdempotencyCache.fingerprint(objectMapper.writeValueAsBytes(paymentRequests));
+    }
 }
 
 //    @PostMapping("/ach")
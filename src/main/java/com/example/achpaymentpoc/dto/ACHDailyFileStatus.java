@@ -0,0 +1,21 @@
+package com.example.achpaymentpoc.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Running totals of the day's open ACH file, and the file path once it has been finalized.
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class ACHDailyFileStatus {
+
+    private int batchCount;
+    private int entryCount;
+    private long entryHash;
+    private long totalDebitAmount;
+    private long totalCreditAmount;
+    private String filePath; // set by finalize
+}
@@ -0,0 +1,382 @@
+package com.example.achpaymentpoc.idempotency;
+
+import com.example.achpaymentpoc.dto.ACHPaymentRequest;
+import com.example.achpaymentpoc.nacha.ACHAmounts;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Supplier;
+
+/**
+ * Memory-mapped index of recently generated entries, keyed on receiver routing number, receiver account, amount and
+ * settlement date, used to refuse the same payment being sent twice. Requests do not carry an effective entry date,
+ * so entries settle on the day they are generated, and the same payment on a later day is a new payment.
+ * <p>
+ * Each entry is a 64-bit fingerprint of its key in an open-addressing hash table stored in a mapped file, together
+ * with the day it was recorded. A Bloom filter in the same file answers most lookups of new entries without touching
+ * the table. The file survives restarts as is, nothing is rebuilt on startup.
+ * <p>
+ * When the table fills up, entries older than {@code ach.duplicates.retention} are dropped and the live ones are
+ * rehashed into a new file, doubled in size if they still do not fit, which is then renamed over the old one.
+ */
+@Slf4j
+@Component
+public class ACHDuplicateIndex {
+
+    private static final long MAGIC = 0x4143484455504958L; // "ACHDUPIX"
+    private static final int HEADER_SIZE = 64; // magic, capacity, size, tombstones
+    private static final int SLOT_SIZE = 16; // fingerprint, epoch day recorded
+    private static final long EMPTY = 0;
+    private static final long TOMBSTONE = 1; // released entry, probing continues past it
+    private static final int BLOOM_BITS_PER_SLOT = 8; // ~10.7 bits per entry at the maximum load, under 1% false positives
+    private static final int BLOOM_HASHES = 7;
+    private static final double MAX_LOAD = 0.75;
+    private static final int MAX_CAPACITY = 1 << 26; // 1 GB of slots, ~50M entries
+
+    private final Path file;
+    private final int initialCapacity;
+    private final Duration retention;
+    private final boolean sync;
+    private final Supplier<LocalDate> today;
+
+    private FileChannel channel;
+    private MappedByteBuffer buffer;
+    private int capacity; // power of two
+    private int size;
+    private int tombstones;
+
+    @Autowired
+    public ACHDuplicateIndex(@Value("${ach.duplicates.file:ach-index/duplicates.idx}") String file,
+                             @Value("${ach.duplicates.capacity:1048576}") int initialCapacity,
+                             @Value("${ach.duplicates.retention:P30D}") Duration retention,
+                             @Value("${ach.duplicates.sync:true}") boolean sync) {
+        this(file, initialCapacity, retention, sync, LocalDate::now);
+    }
+
+    ACHDuplicateIndex(String file, int initialCapacity, Duration retention, boolean sync, Supplier<LocalDate> today) {
+        this.file = Paths.get(file).toAbsolutePath();
+        this.initialCapacity = Integer.highestOneBit(Math.max(16, Math.min(initialCapacity, MAX_CAPACITY)));
+        this.retention = retention;
+        this.sync = sync;
+        this.today = today;
+    }
+
+    @PostConstruct
+    public synchronized void open() throws IOException {
+        Files.createDirectories(file.getParent());
+        if (!Files.exists(file)) {
+            create(file, initialCapacity).close();
+        }
+        map(FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE));
+        if (buffer.getLong(0) != MAGIC) {
+            throw new IOException("Not an ACH duplicate index: " + file);
+        }
+        log.info("Opened ACH duplicate index {} with {} entries", file, size);
+    }
+
+    @PreDestroy
+    public synchronized void close() throws IOException {
+        if (channel != null) {
+            buffer.force();
+            channel.close();
+            channel = null;
+        }
+    }
+
+    /**
+     * Records every payment, or none of them when any is a duplicate of an earlier entry or of another payment in the
+     * list. With {@code allowDuplicates} the payments are recorded regardless.
+     *
+     * @return the fingerprints this call added, to {@link #release} if the payments end up not being generated. A
+     * payment already in the index, allowed through by {@code allowDuplicates}, is not among them, so releasing never
+     * drops the entry of the payment it duplicates
+     * @throws DuplicatePaymentException listing the indexes of the duplicates
+     */
+    public synchronized long[] reserve(List<ACHPaymentRequest> paymentRequests, boolean allowDuplicates) throws IOException {
+        int day = (int) today.get().toEpochDay();
+        long[] fingerprints = new long[paymentRequests.size()];
+        for (int i = 0; i < fingerprints.length; i++) {
+            fingerprints[i] = fingerprint(paymentRequests.get(i), day);
+        }
+        if (!allowDuplicates) {
+            List<Integer> duplicates = findDuplicates(fingerprints);
+            if (!duplicates.isEmpty()) {
+                throw new DuplicatePaymentException(duplicates);
+            }
+        }
+        ensureCapacity(fingerprints.length);
+        int inserted = 0;
+        for (long fingerprint : fingerprints) {
+            if (insert(fingerprint, day)) {
+                fingerprints[inserted++] = fingerprint;
+            }
+        }
+        writeCounts();
+        if (sync) {
+            buffer.force();
+        }
+        return Arrays.copyOf(fingerprints, inserted);
+    }
+
+    /**
+     * Reserves the payments, runs {@code action}, and releases them again if it fails.
+     */
+    public <T> T record(List<ACHPaymentRequest> paymentRequests, boolean allowDuplicates, ACHIdempotencyCache.Action<T> action) throws IOException {
+        long[] fingerprints = reserve(paymentRequests, allowDuplicates);
+        try {
+            return action.run();
+        } catch (IOException | RuntimeException e) {
+            release(fingerprints);
+            throw e;
+        }
+    }
+
+    public synchronized void release(long[] fingerprints) throws IOException {
+        for (long fingerprint : fingerprints) {
+            int slot = find(fingerprint);
+            if (slot >= 0) {
+                buffer.putLong(slotOffset(slot), TOMBSTONE); // the Bloom filter keeps its bits, that only costs a probe
+                size--;
+                tombstones++;
+            }
+        }
+        writeCounts();
+        if (sync) {
+            buffer.force();
+        }
+    }
+
+    public synchronized boolean contains(ACHPaymentRequest request) {
+        long fingerprint = fingerprint(request, (int) today.get().toEpochDay());
+        return mightContain(fingerprint) && find(fingerprint) >= 0;
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    public synchronized int capacity() {
+        return capacity;
+    }
+
+    /**
+     * 64-bit FNV-1a over the duplicate key fields, finished with the MurmurHash3 mixer. 0 and 1 mark empty and released
+     * slots, so they are never returned.
+     */
+    static long fingerprint(ACHPaymentRequest request, int settlementDay) {
+        long hash = 0xcbf29ce484222325L;
+        hash = hash(hash, request.getReceiverRoutingNumber());
+        hash = hash(hash, request.getReceiverAccountNumber());
+        hash = (hash ^ ACHAmounts.toCents(request.getAmount())) * 0x100000001b3L;
+        hash = (hash ^ settlementDay) * 0x100000001b3L;
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash == EMPTY || hash == TOMBSTONE ? hash + 2 : hash;
+    }
+
+    private static long hash(long hash, String value) {
+        if (value != null) {
+            for (int i = 0; i < value.length(); i++) {
+                hash = (hash ^ value.charAt(i)) * 0x100000001b3L;
+            }
+        }
+        return (hash ^ 0x1f) * 0x100000001b3L; // field separator
+    }
+
+    private List<Integer> findDuplicates(long[] fingerprints) {
+        List<Integer> duplicates = new ArrayList<>();
+        long[] sorted = fingerprints.clone(); // finds payments repeated within the list
+        Arrays.sort(sorted);
+        for (int i = 0; i < fingerprints.length; i++) {
+            long fingerprint = fingerprints[i];
+            int at = Arrays.binarySearch(sorted, fingerprint);
+            boolean repeated = (at > 0 && sorted[at - 1] == fingerprint) || (at + 1 < sorted.length && sorted[at + 1] == fingerprint);
+            if (repeated || (mightContain(fingerprint) && find(fingerprint) >= 0)) {
+                duplicates.add(i);
+            }
+        }
+        return duplicates;
+    }
+
+    // Table layout: header, Bloom filter of capacity * 8 bits, then capacity slots
+
+    private int slotOffset(int slot) {
+        return (int) (HEADER_SIZE + (long) capacity * BLOOM_BITS_PER_SLOT / 8 + (long) slot * SLOT_SIZE);
+    }
+
+    private static long fileSize(int capacity) {
+        return HEADER_SIZE + (long) capacity * BLOOM_BITS_PER_SLOT / 8 + (long) capacity * SLOT_SIZE;
+    }
+
+    private boolean mightContain(long fingerprint) {
+        long bloomBits = (long) capacity * BLOOM_BITS_PER_SLOT;
+        int h1 = (int) fingerprint, h2 = (int) (fingerprint >>> 32) | 1;
+        for (int i = 0; i < BLOOM_HASHES; i++) {
+            long bit = (h1 + (long) i * h2) & (bloomBits - 1);
+            if ((buffer.get((int) (HEADER_SIZE + (bit >>> 3))) & (1 << (bit & 7))) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private int find(long fingerprint) {
+        int mask = capacity - 1;
+        for (int slot = (int) fingerprint & mask, probes = 0; probes < capacity; slot = (slot + 1) & mask, probes++) {
+            long value = buffer.getLong(slotOffset(slot));
+            if (value == fingerprint) {
+                return slot;
+            }
+            if (value == EMPTY) {
+                return -1;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Records {@code fingerprint} on {@code day}. Returns false when it was already recorded and only its day was
+     * refreshed.
+     */
+    private boolean insert(long fingerprint, int day) {
+        // ensureCapacity keeps the load below MAX_LOAD, so the probe always reaches an empty slot
+        int mask = capacity - 1;
+        int released = -1;
+        int slot = (int) fingerprint & mask;
+        while (true) {
+            long value = buffer.getLong(slotOffset(slot));
+            if (value == fingerprint) {
+                buffer.putLong(slotOffset(slot) + 8, day); // already recorded, refresh its day
+                return false;
+            }
+            if (value == EMPTY) {
+                break;
+            }
+            if (value == TOMBSTONE && released < 0) {
+                released = slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+        if (released >= 0) {
+            slot = released;
+            tombstones--;
+        }
+        buffer.putLong(slotOffset(slot), fingerprint);
+        buffer.putLong(slotOffset(slot) + 8, day);
+        size++;
+        setBloomBits(buffer, capacity, fingerprint);
+        return true;
+    }
+
+    private static void setBloomBits(MappedByteBuffer buffer, int capacity, long fingerprint) {
+        long bloomBits = (long) capacity * BLOOM_BITS_PER_SLOT;
+        int h1 = (int) fingerprint, h2 = (int) (fingerprint >>> 32) | 1;
+        for (int i = 0; i < BLOOM_HASHES; i++) {
+            long bit = (h1 + (long) i * h2) & (bloomBits - 1);
+            int offset = (int) (HEADER_SIZE + (bit >>> 3));
+            buffer.put(offset, (byte) (buffer.get(offset) | (1 << (bit & 7))));
+        }
+    }
+
+    private void ensureCapacity(int additional) throws IOException {
+        if (size + tombstones + additional <= capacity * MAX_LOAD) {
+            return;
+        }
+        // Drop expired entries and tombstones, then grow until the live entries and the new ones fit
+        int oldestDay = (int) today.get().minusDays(retention.toDays()).toEpochDay();
+        long live = 0;
+        for (int slot = 0; slot < capacity; slot++) {
+            long value = buffer.getLong(slotOffset(slot));
+            if (value != EMPTY && value != TOMBSTONE && buffer.getLong(slotOffset(slot) + 8) >= oldestDay) {
+                live++;
+            }
+        }
+        int newCapacity = capacity;
+        while ((live + additional) > newCapacity * MAX_LOAD) {
+            if (newCapacity >= MAX_CAPACITY) {
+                throw new IllegalStateException("ACH duplicate index cannot hold " + (live + additional) + " entries");
+            }
+            newCapacity *= 2;
+        }
+        rebuild(newCapacity, oldestDay);
+    }
+
+    private void rebuild(int newCapacity, int oldestDay) throws IOException {
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        int newSize = 0;
+        try (FileChannel target = create(temp, newCapacity)) {
+            MappedByteBuffer rebuilt = target.map(FileChannel.MapMode.READ_WRITE, 0, fileSize(newCapacity));
+            long tableOffset = HEADER_SIZE + (long) newCapacity * BLOOM_BITS_PER_SLOT / 8;
+            int mask = newCapacity - 1;
+            for (int slot = 0; slot < capacity; slot++) {
+                long value = buffer.getLong(slotOffset(slot));
+                long day = buffer.getLong(slotOffset(slot) + 8);
+                if (value == EMPTY || value == TOMBSTONE || day < oldestDay) {
+                    continue;
+                }
+                int to = (int) value & mask;
+                while (rebuilt.getLong((int) (tableOffset + (long) to * SLOT_SIZE)) != EMPTY) {
+                    to = (to + 1) & mask;
+                }
+                rebuilt.putLong((int) (tableOffset + (long) to * SLOT_SIZE), value);
+                rebuilt.putLong((int) (tableOffset + (long) to * SLOT_SIZE + 8), day);
+                setBloomBits(rebuilt, newCapacity, value);
+                newSize++;
+            }
+            rebuilt.putInt(12, newSize);
+            rebuilt.force();
+            target.force(true);
+        }
+        channel.close();
+        Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        map(FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE));
+        log.info("Rebuilt ACH duplicate index with {} entries and {} slots", size, capacity);
+    }
+
+    private static FileChannel create(Path path, int capacity) throws IOException {
+        FileChannel created = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        MappedByteBuffer header = created.map(FileChannel.MapMode.READ_WRITE, 0, fileSize(capacity)); // zero filled
+        header.putLong(0, MAGIC);
+        header.putInt(8, capacity);
+        header.force();
+        return created;
+    }
+
+    private void map(FileChannel opened) throws IOException {
+        channel = opened;
+        long length = channel.size();
+        buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, length);
+        capacity = buffer.getInt(8);
+        size = buffer.getInt(12);
+        tombstones = buffer.getInt(16);
+        if (Integer.bitCount(capacity) != 1 || fileSize(capacity) != length) {
+            throw new IOException("Corrupt ACH duplicate index: " + file);
+        }
+    }
+
+    private void writeCounts() {
+        buffer.putInt(12, size);
+        buffer.putInt(16, tombstones);
+    }
+}
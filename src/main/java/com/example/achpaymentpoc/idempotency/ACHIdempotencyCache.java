@@ -0,0 +1,135 @@
+package com.example.achpaymentpoc.idempotency;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Remembers the result of each request sent with an {@value #HEADER} header, so a retried request gets the original
+ * result instead of generating the payments again.
+ * <p>
+ * A retry that arrives while the first request is still running waits for its result. A failed request is forgotten,
+ * so it can be retried with the same key. Reusing a key with a different body, told apart by a SHA-256
+ * {@link #fingerprint} of the body, is rejected with {@link IdempotencyKeyReusedException}. Results are kept for {@code ach.idempotency.ttl}; results that are files
+ * under the cache directory are deleted with their entry.
+ */
+@Component
+public class ACHIdempotencyCache {
+
+    public static final String HEADER = "Idempotency-Key";
+
+    /**
+     * The work done once per key.
+     */
+    public interface Action<T> {
+        T run() throws IOException;
+    }
+
+    private final Path directory;
+    private final Duration ttl;
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+
+    public ACHIdempotencyCache(@Value("${ach.idempotency.dir:ach-idempotency}") String directory,
+                               @Value("${ach.idempotency.ttl:PT24H}") Duration ttl) throws IOException {
+        this.directory = Files.createDirectories(Paths.get(directory));
+        this.ttl = ttl;
+    }
+
+    private record Entry(byte[] fingerprint, CompletableFuture<Object> result, Instant createdAt) {
+    }
+
+    /**
+     * SHA-256 digest of a request body, strong enough that a different body under the same key is never mistaken for
+     * a retry.
+     */
+    public static byte[] fingerprint(byte[] body) {
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(body);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e); // every JVM is required to provide it
+        }
+    }
+
+    /**
+     * Runs {@code action} for the first request with {@code key} in {@code scope} and returns its result to every
+     * later request with the same key.
+     *
+     * @param fingerprint {@link #fingerprint} of the request body, used to detect a key reused for a different request
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T execute(String scope, String key, byte[] fingerprint, Action<T> action) throws IOException {
+        evictExpired();
+        String scopedKey = scope + ':' + key;
+        Entry created = new Entry(fingerprint, new CompletableFuture<>(), Instant.now());
+        Entry existing = entries.putIfAbsent(scopedKey, created);
+        if (existing != null) {
+            if (!MessageDigest.isEqual(existing.fingerprint(), fingerprint)) {
+                throw new IdempotencyKeyReusedException(key);
+            }
+            return (T) await(existing.result());
+        }
+        try {
+            T result = action.run();
+            created.result().complete(result);
+            return result;
+        } catch (IOException | RuntimeException e) {
+            entries.remove(scopedKey, created);
+            created.result().completeExceptionally(e);
+            throw e;
+        }
+    }
+
+    /**
+     * A file for the result of {@code key} in {@code scope}, named after a hash of the key so any key is a safe name.
+     */
+    public Path resultFile(String scope, String key, String suffix) {
+        UUID name = UUID.nameUUIDFromBytes((scope + ':' + key).getBytes(StandardCharsets.UTF_8));
+        return directory.resolve(name + suffix);
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    private static Object await(CompletableFuture<Object> result) throws IOException {
+        try {
+            return result.join();
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw e;
+        }
+    }
+
+    private void evictExpired() throws IOException {
+        Instant cutoff = Instant.now().minus(ttl);
+        for (Map.Entry<String, Entry> entry : entries.entrySet()) {
+            Entry value = entry.getValue();
+            if (value.createdAt().isBefore(cutoff) && value.result().isDone() && entries.remove(entry.getKey(), value)) {
+                Object result = value.result().getNow(null);
+                if (result instanceof Path && ((Path) result).startsWith(directory)) {
+                    Files.deleteIfExists((Path) result);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,20 @@
+package com.example.achpaymentpoc.idempotency;
+
+import java.util.List;
+
+/**
+ * Thrown when payments match entries that were already generated, or each other.
+ */
+public class DuplicatePaymentException extends RuntimeException {
+
+    private final List<Integer> indexes;
+
+    public DuplicatePaymentException(List<Integer> indexes) {
+        super(indexes.size() + " duplicate ACH payments at indexes " + indexes);
+        this.indexes = indexes;
+    }
+
+    public List<Integer> getIndexes() {
+        return indexes;
+    }
+}
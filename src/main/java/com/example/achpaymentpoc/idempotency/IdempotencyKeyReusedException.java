@@ -0,0 +1,11 @@
+package com.example.achpaymentpoc.idempotency;
+
+/**
+ * Thrown when an idempotency key is sent again with a different request body.
+ */
+public class IdempotencyKeyReusedException extends RuntimeException {
+
+    public IdempotencyKeyReusedException(String key) {
+        super("Idempotency key " + key + " was already used for a different request");
+    }
+}
@@ -0,0 +1,80 @@
+package com.example.achpaymentpoc.ingest;
+
+import com.example.achpaymentpoc.dto.ACHPaymentRequest;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Pulls {@link ACHPaymentRequest}s one at a time off a Jackson token stream.
+ * <p>
+ * Accepts either a JSON array of requests or newline delimited JSON (one request object per line). Only the
+ * request currently being bound is held in memory, so the size of the body does not affect the heap.
+ */
+public class ACHPaymentRequestReader implements Iterator<ACHPaymentRequest>, Closeable {
+
+    private final JsonParser parser;
+    private final ObjectReader requestReader;
+    private final boolean array;
+    private long count;
+
+    public ACHPaymentRequestReader(ObjectMapper objectMapper, InputStream in) throws IOException {
+        this.parser = objectMapper.getFactory().createParser(in);
+        this.requestReader = objectMapper.readerFor(ACHPaymentRequest.class);
+        JsonToken first = parser.nextToken();
+        this.array = first == JsonToken.START_ARRAY;
+        if (array) {
+            parser.nextToken(); // move onto the first element
+        }
+        expectObjectOrEnd();
+    }
+
+    @Override
+    public boolean hasNext() {
+        return parser.currentToken() == JsonToken.START_OBJECT;
+    }
+
+    @Override
+    public ACHPaymentRequest next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        try {
+            ACHPaymentRequest request = requestReader.readValue(parser); // leaves the parser on END_OBJECT
+            parser.nextToken();
+            expectObjectOrEnd();
+            count++;
+            return request;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to read ACH payment request #" + count, e);
+        }
+    }
+
+    /**
+     * Number of requests handed out so far.
+     */
+    public long count() {
+        return count;
+    }
+
+    @Override
+    public void close() throws IOException {
+        parser.close();
+    }
+
+    private void expectObjectOrEnd() throws IOException {
+        JsonToken token = parser.currentToken();
+        if (token == JsonToken.START_OBJECT || token == null || (array && token == JsonToken.END_ARRAY)) {
+            return;
+        }
+        throw new IOException("Expected an ACH payment request object but found " + token + " at " + parser.currentLocation());
+    }
+}
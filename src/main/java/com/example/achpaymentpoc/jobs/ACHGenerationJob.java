@@ -0,0 +1,29 @@
+package com.example.achpaymentpoc.jobs;
+
+import lombok.Data;
+
+import java.time.Instant;
+
+/**
+ * State of an asynchronous ACH file generation. Updated by the worker thread and read by status requests.
+ */
+@Data
+public class ACHGenerationJob {
+
+    public enum Status {
+        QUEUED, RUNNING, COMPLETED, FAILED
+    }
+
+    private final String id;
+    private final int entryCount;
+    private final Instant submittedAt = Instant.now();
+    private volatile Status status = Status.QUEUED;
+    private volatile String filePath;
+    private volatile String error;
+    private volatile Instant startedAt;
+    private volatile Instant completedAt;
+
+    public boolean isFinished() {
+        return status == Status.COMPLETED || status == Status.FAILED;
+    }
+}
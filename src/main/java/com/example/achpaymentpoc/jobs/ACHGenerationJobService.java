@@ -0,0 +1,154 @@
+package com.example.achpaymentpoc.jobs;
+
+import com.example.achpaymentpoc.dto.ACHPaymentRequest;
+import com.example.achpaymentpoc.idempotency.ACHDuplicateIndex;
+import com.example.achpaymentpoc.metrics.ACHMetrics;
+import com.example.achpaymentpoc.services.ACHService;
+import io.micrometer.core.instrument.Gauge;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs ACH file generations in the background so request threads return immediately.
+ * <p>
+ * Jobs run on a fixed set of worker threads behind a bounded queue. When the queue is full, {@link #submit} throws
+ * {@link RejectedExecutionException} and the caller is expected to back off (HTTP 429). Every job writes its own
+ * {@code ach-<jobId>.txt} in the output directory, through a temp file that is renamed into place once complete.
+ * Payments are recorded in the duplicate index when the job is accepted and released again if it is rejected or fails.
+ */
+@Slf4j
+@Service
+public class ACHGenerationJobService {
+
+    private final ACHService achService;
+    private final Path outputDirectory;
+    private final Duration retention;
+    private final ThreadPoolExecutor executor;
+    private final Map<String, ACHGenerationJob> jobs = new ConcurrentHashMap<>();
+
+    // Refuses payments that were already generated, absent when running outside the application
+    @Autowired(required = false)
+    private ACHDuplicateIndex duplicateIndex;
+
+    public ACHGenerationJobService(ACHService achService, ACHMetrics metrics,
+                                   @Value("${ach.jobs.output-dir:ach-output}") String outputDirectory,
+                                   @Value("${ach.jobs.threads:4}") int threads,
+                                   @Value("${ach.jobs.queue-capacity:64}") int queueCapacity,
+                                   @Value("${ach.jobs.retention:PT1H}") Duration retention) throws IOException {
+        this.achService = achService;
+        this.outputDirectory = Files.createDirectories(Paths.get(outputDirectory));
+        this.retention = retention;
+        AtomicInteger workerCount = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), runnable -> {
+                    Thread thread = new Thread(runnable, "ach-generation-" + workerCount.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }, new ThreadPoolExecutor.AbortPolicy());
+        Gauge.builder("ach.jobs.running", executor, ThreadPoolExecutor::getActiveCount)
+                .description("Generation jobs currently running")
+                .register(metrics.registry());
+        Gauge.builder("ach.jobs.queued", executor, pool -> pool.getQueue().size())
+                .description("Generation jobs waiting for a worker")
+                .register(metrics.registry());
+    }
+
+    public ACHGenerationJob submit(List<ACHPaymentRequest> paymentRequests) throws IOException {
+        return submit(paymentRequests, false);
+    }
+
+    /**
+     * Queues a generation and returns its job right away.
+     *
+     * @throws RejectedExecutionException when the queue is full
+     * @throws com.example.achpaymentpoc.idempotency.DuplicatePaymentException when payments were generated before
+     *                                                                         and {@code allowDuplicates} is off
+     */
+    public ACHGenerationJob submit(List<ACHPaymentRequest> paymentRequests, boolean allowDuplicates) throws IOException {
+        evictExpiredJobs();
+        long[] reserved = duplicateIndex != null ? duplicateIndex.reserve(paymentRequests, allowDuplicates) : null;
+        ACHGenerationJob job = new ACHGenerationJob(UUID.randomUUID().toString(), paymentRequests.size());
+        jobs.put(job.getId(), job);
+        try {
+            executor.execute(() -> run(job, paymentRequests, reserved));
+        } catch (RejectedExecutionException e) {
+            jobs.remove(job.getId());
+            release(reserved);
+            throw e;
+        }
+        return job;
+    }
+
+    public Optional<ACHGenerationJob> find(String jobId) {
+        return Optional.ofNullable(jobs.get(jobId));
+    }
+
+    public int queuedJobs() {
+        return executor.getQueue().size();
+    }
+
+    public int runningJobs() {
+        return executor.getActiveCount();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    private void run(ACHGenerationJob job, List<ACHPaymentRequest> paymentRequests, long[] reserved) {
+        job.setStartedAt(Instant.now());
+        job.setStatus(ACHGenerationJob.Status.RUNNING);
+        Path file = outputDirectory.resolve("ach-" + job.getId() + ".txt");
+        try {
+            achService.writeACHFile(paymentRequests, file.toString());
+            job.setFilePath(file.toString());
+            job.setCompletedAt(Instant.now()); // set before the status so finished jobs always have it
+            job.setStatus(ACHGenerationJob.Status.COMPLETED);
+        } catch (Exception e) {
+            job.setError(e.getMessage() == null ? e.getClass().getSimpleName() : e.getMessage());
+            release(reserved);
+            job.setCompletedAt(Instant.now());
+            job.setStatus(ACHGenerationJob.Status.FAILED);
+        }
+    }
+
+    private void release(long[] reserved) {
+        if (reserved == null) {
+            return;
+        }
+        try {
+            duplicateIndex.release(reserved);
+        } catch (IOException e) {
+            log.warn("Failed to release the duplicate index entries of an unfinished job", e);
+        }
+    }
+
+    /**
+     * Forgets finished jobs older than {@code ach.jobs.retention}. Their files are left in the output directory.
+     */
+    private void evictExpiredJobs() {
+        Instant cutoff = Instant.now().minus(retention);
+        jobs.values().removeIf(job -> job.isFinished() && job.getCompletedAt().isBefore(cutoff));
+    }
+}
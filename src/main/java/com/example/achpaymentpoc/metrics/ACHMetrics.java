@@ -0,0 +1,153 @@
+package com.example.achpaymentpoc.metrics;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.composite.CompositeMeterRegistry;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Micrometer meters for the generation, validation and upload hot paths, published through Actuator.
+ * <p>
+ * Meters are created once and recorded with raw nanosecond durations. Record timers are recorded once per batch
+ * (or per parallel chunk) rather than once per record, so instrumentation stays cheap enough to leave on.
+ */
+@Component
+public class ACHMetrics {
+
+    private final Timer fileHeaderTimer;
+    private final Timer batchHeaderTimer;
+    private final Timer entryDetailTimer;
+    private final Timer batchControlTimer;
+    private final Timer fileControlTimer;
+    private final Timer generationTimer;
+    private final Timer fileSyncTimer;
+    private final Counter entriesGenerated;
+    private final Counter bytesGenerated;
+    private final DistributionSummary fileSize;
+    private final DistributionSummary fileEntries;
+    private final AtomicLong entriesPerSecond = new AtomicLong();
+    private final AtomicLong bytesPerSecond = new AtomicLong();
+    private final Timer validationTimer;
+    private final Timer uploadTimer;
+    private final Timer uploadRequestTimer;
+    private final Counter uploadRetries;
+    private final Counter bytesUploaded;
+    private final MeterRegistry registry;
+
+    public ACHMetrics(MeterRegistry registry) {
+        this.registry = registry;
+        this.fileHeaderTimer = recordTimer(registry, "file_header");
+        this.batchHeaderTimer = recordTimer(registry, "batch_header");
+        this.entryDetailTimer = recordTimer(registry, "entry_detail");
+        this.batchControlTimer = recordTimer(registry, "batch_control");
+        this.fileControlTimer = recordTimer(registry, "file_control");
+        this.generationTimer = Timer.builder("ach.generation.duration")
+                .description("Time to generate a complete ACH file")
+                .publishPercentileHistogram()
+                .register(registry);
+        this.fileSyncTimer = Timer.builder("ach.file.sync.duration")
+                .description("Time to force a generated file to disk and rename it into place")
+                .register(registry);
+        this.entriesGenerated = Counter.builder("ach.generation.entries.total").register(registry);
+        this.bytesGenerated = Counter.builder("ach.generation.bytes.total").baseUnit("bytes").register(registry);
+        this.fileSize = DistributionSummary.builder("ach.generation.file.size")
+                .baseUnit("bytes")
+                .publishPercentileHistogram()
+                .register(registry);
+        this.fileEntries = DistributionSummary.builder("ach.generation.file.entries")
+                .description("Entry detail records per generated file")
+                .publishPercentileHistogram()
+                .register(registry);
+        Gauge.builder("ach.generation.entries.rate", entriesPerSecond, AtomicLong::get)
+                .description("Entries per second of the last generated file")
+                .register(registry);
+        Gauge.builder("ach.generation.bytes.rate", bytesPerSecond, AtomicLong::get)
+                .description("Bytes per second of the last generated file")
+                .baseUnit("bytes")
+                .register(registry);
+        this.validationTimer = Timer.builder("ach.validation.duration").register(registry);
+        this.uploadTimer = Timer.builder("ach.upload.duration")
+                .description("Time to upload a complete file")
+                .publishPercentileHistogram()
+                .register(registry);
+        this.uploadRequestTimer = Timer.builder("ach.upload.request.latency")
+                .description("Latency of one upload chunk request")
+                .publishPercentileHistogram()
+                .register(registry);
+        this.uploadRetries = Counter.builder("ach.upload.retries").register(registry);
+        this.bytesUploaded = Counter.builder("ach.upload.bytes.total").baseUnit("bytes").register(registry);
+    }
+
+    /**
+     * Metrics that go nowhere, for code constructed outside of Spring.
+     */
+    public static ACHMetrics noop() {
+        return new ACHMetrics(new CompositeMeterRegistry());
+    }
+
+    public MeterRegistry registry() {
+        return registry;
+    }
+
+    public void fileHeader(long nanos) {
+        fileHeaderTimer.record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void batchHeader(long nanos) {
+        batchHeaderTimer.record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void entryDetails(long nanos) {
+        entryDetailTimer.record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void batchControl(long nanos) {
+        batchControlTimer.record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void fileControl(long nanos) {
+        fileControlTimer.record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void fileSync(long nanos) {
+        fileSyncTimer.record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void generation(long entries, long bytes, long nanos) {
+        generationTimer.record(nanos, TimeUnit.NANOSECONDS);
+        entriesGenerated.increment(entries);
+        bytesGenerated.increment(bytes);
+        fileEntries.record(entries);
+        fileSize.record(bytes);
+        double seconds = Math.max(1, nanos) / 1e9;
+        entriesPerSecond.set((long) (entries / seconds));
+        bytesPerSecond.set((long) (bytes / seconds));
+    }
+
+    public void validation(long nanos) {
+        validationTimer.record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void uploadRequest(long nanos) {
+        uploadRequestTimer.record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void upload(long bytes, int retries, long nanos) {
+        uploadTimer.record(nanos, TimeUnit.NANOSECONDS);
+        bytesUploaded.increment(bytes);
+        uploadRetries.increment(retries);
+    }
+
+    private static Timer recordTimer(MeterRegistry registry, String recordType) {
+        return Timer.builder("ach.record.duration")
+                .description("Time spent encoding records of one type, recorded per batch")
+                .tag("type", recordType)
+                .register(registry);
+    }
+}
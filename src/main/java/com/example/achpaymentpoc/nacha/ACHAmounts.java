@@ -0,0 +1,27 @@
+package com.example.achpaymentpoc.nacha;
+
+/**
+ * NACHA amounts are whole cents with an implied decimal point. Request amounts are decimal currency units, so they are
+ * converted once on the way in and only exact {@code long} cents are summed and written.
+ */
+public final class ACHAmounts {
+
+    public static final long MAX_TOTAL = 999999999999L; // debit and credit totals of control records, 12 digits of cents
+
+    private ACHAmounts() {
+    }
+
+    /**
+     * Rounds to the nearest cent, absorbing the binary representation error of values like 0.29.
+     */
+    public static long toCents(double amount) {
+        return Math.round(amount * 100);
+    }
+
+    /**
+     * Whether {@code amount} carries a fraction of a cent, e.g. 10.005.
+     */
+    public static boolean hasFractionalCents(double amount) {
+        return Math.abs(amount * 100 - toCents(amount)) > 0.001;
+    }
+}
@@ -0,0 +1,58 @@
+package com.example.achpaymentpoc.nacha;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDate;
+import java.util.function.Supplier;
+
+/**
+ * Hands out the file ID modifier of every file generated on a day, A to Z then 0 to 9.
+ * <p>
+ * The bank tells files with the same creation date, origin and destination apart by this modifier, so every
+ * generation path draws from this one allocator. It starts over at A on the next day. A day with more than 36 files
+ * starts over as well and logs a warning, since the modifier cannot keep those files apart.
+ */
+@Slf4j
+@Component
+public class ACHFileIdModifiers {
+
+    public static final String MODIFIERS = "ABCDEFGHIJKLMNOPQRSTUVWXYZ0123456789";
+
+    private final Supplier<LocalDate> today;
+    private LocalDate day;
+    private int allocated; // modifiers handed out on day
+
+    public ACHFileIdModifiers() {
+        this(LocalDate::now);
+    }
+
+    ACHFileIdModifiers(Supplier<LocalDate> today) {
+        this.today = today;
+    }
+
+    public char next() {
+        return next(1).charAt(0);
+    }
+
+    /**
+     * Allocates {@code count} consecutive modifiers, for the files of one run.
+     */
+    public synchronized String next(int count) {
+        if (count < 1 || count > MODIFIERS.length()) {
+            throw new IllegalArgumentException("Cannot allocate " + count + " of " + MODIFIERS.length() + " file ID modifiers");
+        }
+        LocalDate now = today.get();
+        if (!now.equals(day)) {
+            day = now;
+            allocated = 0;
+        }
+        if (allocated + count > MODIFIERS.length()) {
+            log.warn("All {} file ID modifiers of {} are used, starting over at A", MODIFIERS.length(), day);
+            allocated = 0;
+        }
+        String modifiers = MODIFIERS.substring(allocated, allocated + count);
+        allocated += count;
+        return modifiers;
+    }
+}
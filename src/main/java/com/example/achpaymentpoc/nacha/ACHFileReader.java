@@ -0,0 +1,112 @@
+package com.example.achpaymentpoc.nacha;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Reads a NACHA file through memory-mapped segments of its {@link FileChannel}.
+ * <p>
+ * {@link #next()} returns the same {@link ACHRecordView} repositioned over the next record, so reading a file of any
+ * size allocates nothing per line. Lines may be terminated by LF, CRLF or nothing at all; the terminator is detected
+ * from the first record and the final line may omit it.
+ */
+public class ACHFileReader implements Closeable {
+
+    private static final long MAX_SEGMENT_SIZE = Integer.MAX_VALUE;
+
+    private final FileChannel channel;
+    private final long size;
+    private final int lineSize;
+    private final long segmentSize;
+    private final ACHRecordView view = new ACHRecordView();
+    private MappedByteBuffer segment;
+    private long segmentStart;
+    private long position;
+    private long lineNumber;
+
+    private ACHFileReader(FileChannel channel) throws IOException {
+        this.channel = channel;
+        this.size = channel.size();
+        this.lineSize = detectLineSize();
+        this.segmentSize = (MAX_SEGMENT_SIZE / lineSize) * lineSize; // segments always end on a line boundary
+    }
+
+    public static ACHFileReader open(Path path) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+        try {
+            return new ACHFileReader(channel);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Moves to the next record, or returns {@code null} at the end of the file.
+     */
+    public ACHRecordView next() throws IOException {
+        if (size - position < ACHRecordWriter.RECORD_SIZE) {
+            if (size - position > 0 && !isLineTerminatorOnly(size - position)) {
+                throw new IOException("Truncated ACH record at line " + (lineNumber + 1));
+            }
+            return null;
+        }
+        if (segment == null || position >= segmentStart + segment.limit()) {
+            segmentStart = position;
+            segment = channel.map(FileChannel.MapMode.READ_ONLY, segmentStart, Math.min(segmentSize, size - segmentStart));
+        }
+        view.reset(segment, (int) (position - segmentStart));
+        position += lineSize;
+        lineNumber++;
+        return view;
+    }
+
+    /**
+     * 1-based line number of the record last returned by {@link #next()}.
+     */
+    public long lineNumber() {
+        return lineNumber;
+    }
+
+    /**
+     * Byte offset of the record last returned by {@link #next()}.
+     */
+    public long recordOffset() {
+        return (lineNumber - 1) * lineSize;
+    }
+
+    public int lineSize() {
+        return lineSize;
+    }
+
+    @Override
+    public void close() throws IOException {
+        segment = null;
+        channel.close();
+    }
+
+    private int detectLineSize() throws IOException {
+        if (size <= ACHRecordWriter.RECORD_SIZE) {
+            return ACHRecordWriter.RECORD_SIZE + 1;
+        }
+        ByteBuffer terminator = ByteBuffer.allocate(1);
+        channel.read(terminator, ACHRecordWriter.RECORD_SIZE);
+        byte b = terminator.get(0);
+        if (b == '\n') {
+            return ACHRecordWriter.RECORD_SIZE + 1;
+        }
+        if (b == '\r') {
+            return ACHRecordWriter.RECORD_SIZE + 2;
+        }
+        return ACHRecordWriter.RECORD_SIZE;
+    }
+
+    private boolean isLineTerminatorOnly(long remaining) {
+        return remaining <= lineSize - ACHRecordWriter.RECORD_SIZE;
+    }
+}
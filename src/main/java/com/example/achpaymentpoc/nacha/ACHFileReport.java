@@ -0,0 +1,42 @@
+package com.example.achpaymentpoc.nacha;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Outcome of verifying a NACHA file: the totals recomputed from its entries and every control field that disagrees.
+ */
+@Data
+@NoArgsConstructor
+public class ACHFileReport {
+
+    private long recordCount;
+    private long batchCount;
+    private long entryAddendaCount;
+    private long entryHash;
+    private long totalDebitAmount;
+    private long totalCreditAmount;
+    private List<Mismatch> mismatches = new ArrayList<>();
+
+    public boolean isValid() {
+        return mismatches.isEmpty();
+    }
+
+    void mismatch(long lineNumber, String field, long expected, long actual) {
+        mismatches.add(new Mismatch(lineNumber, field, expected, actual));
+    }
+
+    @Data
+    @AllArgsConstructor
+    @NoArgsConstructor
+    public static class Mismatch {
+        private long lineNumber;
+        private String field;
+        private long expected; // recomputed from the entries
+        private long actual; // found in the control record
+    }
+}
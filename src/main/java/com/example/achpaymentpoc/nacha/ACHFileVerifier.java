@@ -0,0 +1,99 @@
+package com.example.achpaymentpoc.nacha;
+
+import com.example.achpaymentpoc.batch.ACHBatch;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+/**
+ * Recomputes batch and file control totals of a NACHA file in a single pass and reports every type 8 and type 9
+ * field that does not match, as well as a block count or block padding that does not fit the number of records.
+ */
+public final class ACHFileVerifier {
+
+    private ACHFileVerifier() {
+    }
+
+    public static ACHFileReport verify(Path path) throws IOException {
+        ACHFileReport report = new ACHFileReport();
+        long batchEntries = 0, batchHash = 0, batchDebit = 0, batchCredit = 0;
+        long fileEntries = 0, fileHash = 0, fileDebit = 0, fileCredit = 0, batches = 0;
+        boolean fileControlSeen = false;
+        long fileControlLine = 0, blockCount = 0;
+
+        try (ACHFileReader reader = ACHFileReader.open(path)) {
+            ACHRecordView record;
+            while ((record = reader.next()) != null) {
+                report.setRecordCount(reader.lineNumber());
+                long line = reader.lineNumber();
+                switch (record.recordType()) {
+                    case ACHRecordView.BATCH_HEADER -> {
+                        batchEntries = 0;
+                        batchHash = 0;
+                        batchDebit = 0;
+                        batchCredit = 0;
+                    }
+                    case ACHRecordView.ENTRY_DETAIL -> {
+                        batchEntries++;
+                        batchHash += record.receivingDFIIdentification();
+                        if (record.isDebit()) {
+                            batchDebit += record.amount();
+                        } else {
+                            batchCredit += record.amount();
+                        }
+                    }
+                    case ACHRecordView.ADDENDA -> batchEntries++;
+                    case ACHRecordView.BATCH_CONTROL -> {
+                        batchHash %= ACHBatch.ENTRY_HASH_MODULUS;
+                        check(report, line, "batchEntryAddendaCount", batchEntries, record.batchEntryAddendaCount());
+                        check(report, line, "batchEntryHash", batchHash, record.batchEntryHash());
+                        check(report, line, "batchTotalDebitAmount", batchDebit, record.batchTotalDebitAmount());
+                        check(report, line, "batchTotalCreditAmount", batchCredit, record.batchTotalCreditAmount());
+                        batches++;
+                        fileEntries += batchEntries;
+                        fileHash = (fileHash + batchHash) % ACHBatch.ENTRY_HASH_MODULUS;
+                        fileDebit += batchDebit;
+                        fileCredit += batchCredit;
+                    }
+                    case ACHRecordView.FILE_CONTROL -> {
+                        if (fileControlSeen || record.isPadding()) {
+                            break; // block padding after the file control record
+                        }
+                        fileControlSeen = true;
+                        fileControlLine = line;
+                        blockCount = record.fileBlockCount();
+                        check(report, line, "fileBatchCount", batches, record.fileBatchCount());
+                        check(report, line, "fileEntryAddendaCount", fileEntries, record.fileEntryAddendaCount());
+                        check(report, line, "fileEntryHash", fileHash, record.fileEntryHash());
+                        check(report, line, "fileTotalDebitAmount", fileDebit, record.fileTotalDebitAmount());
+                        check(report, line, "fileTotalCreditAmount", fileCredit, record.fileTotalCreditAmount());
+                    }
+                    default -> {
+                        // file header has no totals
+                    }
+                }
+            }
+        }
+
+        if (!fileControlSeen) {
+            report.mismatch(report.getRecordCount(), "fileControlRecord", 1, 0);
+        } else {
+            // every record counts towards the blocks, including the padding after the file control record
+            long records = report.getRecordCount();
+            check(report, fileControlLine, "fileBlockCount", (records + ACHRecordWriter.BLOCKING_FACTOR - 1) / ACHRecordWriter.BLOCKING_FACTOR, blockCount);
+            check(report, records, "blockPadding", 0, records % ACHRecordWriter.BLOCKING_FACTOR);
+        }
+        report.setBatchCount(batches);
+        report.setEntryAddendaCount(fileEntries);
+        report.setEntryHash(fileHash);
+        report.setTotalDebitAmount(fileDebit);
+        report.setTotalCreditAmount(fileCredit);
+        return report;
+    }
+
+    private static void check(ACHFileReport report, long lineNumber, String field, long expected, long actual) {
+        if (expected != actual) {
+            report.mismatch(lineNumber, field, expected, actual);
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package com.example.achpaymentpoc.nacha;
+
+import com.example.achpaymentpoc.metrics.ACHMetrics;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * Bounded LRU cache of precompiled 94 byte record templates.
+ * <p>
+ * Header and control records of one originator differ only in a few fields (batch number, counts, hash, totals,
+ * dates). The generator renders every other field once into a template and afterwards copies the template and writes
+ * the variable fields at their fixed offsets. The same few hundred originators recur in every run, so the cache is
+ * sized for those and evicts the least recently used template beyond that.
+ */
+@Component
+public class ACHRecordTemplateCache {
+
+    private final int maximumSize;
+    private final Map<Object, byte[]> templates;
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    public ACHRecordTemplateCache(int maximumSize) {
+        if (maximumSize < 1) {
+            throw new IllegalArgumentException("maximumSize must be positive");
+        }
+        this.maximumSize = maximumSize;
+        this.templates = new LinkedHashMap<>(16, 0.75f, true) { // access order, eldest is least recently used
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Object, byte[]> eldest) {
+                if (size() > ACHRecordTemplateCache.this.maximumSize) {
+                    evictions++;
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    @Autowired
+    public ACHRecordTemplateCache(@Value("${ach.templates.cache-size:1024}") int maximumSize, ACHMetrics metrics) {
+        this(maximumSize);
+        FunctionCounter.builder("ach.templates.cache.requests", this, ACHRecordTemplateCache::hits)
+                .tag("result", "hit")
+                .register(metrics.registry());
+        FunctionCounter.builder("ach.templates.cache.requests", this, ACHRecordTemplateCache::misses)
+                .tag("result", "miss")
+                .register(metrics.registry());
+        FunctionCounter.builder("ach.templates.cache.evictions", this, ACHRecordTemplateCache::evictions)
+                .register(metrics.registry());
+        Gauge.builder("ach.templates.cache.size", this, ACHRecordTemplateCache::size)
+                .register(metrics.registry());
+    }
+
+    /**
+     * Returns the template for {@code key}, rendering it on a miss. Templates must not be modified by callers.
+     */
+    public synchronized byte[] get(Object key, Supplier<byte[]> render) {
+        byte[] template = templates.get(key);
+        if (template != null) {
+            hits++;
+            return template;
+        }
+        misses++;
+        template = render.get();
+        if (template.length != ACHRecordWriter.RECORD_SIZE) {
+            throw new IllegalStateException("ACH record template must be " + ACHRecordWriter.RECORD_SIZE + " bytes");
+        }
+        templates.put(key, template);
+        return template;
+    }
+
+    public synchronized long hits() {
+        return hits;
+    }
+
+    public synchronized long misses() {
+        return misses;
+    }
+
+    public synchronized long evictions() {
+        return evictions;
+    }
+
+    public synchronized int size() {
+        return templates.size();
+    }
+
+    public int maximumSize() {
+        return maximumSize;
+    }
+}
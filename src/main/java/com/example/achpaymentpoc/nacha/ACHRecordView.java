@@ -0,0 +1,170 @@
+package com.example.achpaymentpoc.nacha;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Flyweight view over one 94 byte record of a mapped NACHA file. The view is repositioned for every record, and
+ * fields are only decoded when asked for. Positions are 1-based, as in the NACHA record layouts.
+ */
+public class ACHRecordView {
+
+    public static final char FILE_HEADER = '1';
+    public static final char BATCH_HEADER = '5';
+    public static final char ENTRY_DETAIL = '6';
+    public static final char ADDENDA = '7';
+    public static final char BATCH_CONTROL = '8';
+    public static final char FILE_CONTROL = '9';
+
+    private ByteBuffer buffer;
+    private int offset;
+
+    void reset(ByteBuffer buffer, int offset) {
+        this.buffer = buffer;
+        this.offset = offset;
+    }
+
+    public char recordType() {
+        return (char) byteAt(1);
+    }
+
+    /**
+     * Block padding lines are made of 94 '9' characters.
+     */
+    public boolean isPadding() {
+        for (int position = 1; position <= ACHRecordWriter.RECORD_SIZE; position++) {
+            if (byteAt(position) != '9') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Decodes the numeric field starting at {@code position}, treating spaces as zeros.
+     */
+    public long digits(int position, int length) {
+        long value = 0;
+        for (int i = position; i < position + length; i++) {
+            int b = byteAt(i);
+            if (b == ' ') {
+                b = '0';
+            } else if (b < '0' || b > '9') {
+                throw new NumberFormatException("Non-numeric character '" + (char) b + "' at position " + i);
+            }
+            value = value * 10 + (b - '0');
+        }
+        return value;
+    }
+
+    /**
+     * Decodes an alphanumeric field with trailing spaces removed. This is the only accessor that allocates.
+     */
+    public String alpha(int position, int length) {
+        int end = position + length;
+        while (end > position && byteAt(end - 1) == ' ') {
+            end--;
+        }
+        char[] chars = new char[end - position];
+        for (int i = 0; i < chars.length; i++) {
+            chars[i] = (char) byteAt(position + i);
+        }
+        return new String(chars);
+    }
+
+    public int serviceClassCode() {
+        return (int) digits(2, 3);
+    }
+
+    public long batchNumber() {
+        return digits(88, 7);
+    }
+
+    // Entry detail (type 6) fields
+
+    public int transactionCode() {
+        return (int) digits(2, 2);
+    }
+
+    /**
+     * Credit transaction codes end in 1 to 4 (e.g. 22, 32), debits in 6 to 9 (e.g. 27, 37).
+     */
+    public boolean isDebit() {
+        return byteAt(3) >= '5';
+    }
+
+    public long receivingDFIIdentification() {
+        return digits(4, 8);
+    }
+
+    public long amount() {
+        return digits(30, 10);
+    }
+
+    public boolean hasAddenda() {
+        return byteAt(79) == '1';
+    }
+
+    public long traceNumber() {
+        return digits(80, 15);
+    }
+
+    // Batch control (type 8) fields
+
+    public long batchEntryAddendaCount() {
+        return digits(5, 6);
+    }
+
+    public long batchEntryHash() {
+        return digits(11, 10);
+    }
+
+    public long batchTotalDebitAmount() {
+        return digits(21, 12);
+    }
+
+    public long batchTotalCreditAmount() {
+        return digits(33, 12);
+    }
+
+    // File control (type 9) fields
+
+    public long fileBatchCount() {
+        return digits(2, 6);
+    }
+
+    public long fileBlockCount() {
+        return digits(8, 6);
+    }
+
+    public long fileEntryAddendaCount() {
+        return digits(14, 8);
+    }
+
+    public long fileEntryHash() {
+        return digits(22, 10);
+    }
+
+    public long fileTotalDebitAmount() {
+        return digits(32, 12);
+    }
+
+    public long fileTotalCreditAmount() {
+        return digits(44, 12);
+    }
+
+    /**
+     * Copies the raw 94 bytes of the record into {@code target}.
+     */
+    public void copyTo(byte[] target, int targetOffset) {
+        buffer.get(offset, target, targetOffset, ACHRecordWriter.RECORD_SIZE);
+    }
+
+    @Override
+    public String toString() {
+        return alpha(1, ACHRecordWriter.RECORD_SIZE);
+    }
+
+    private int byteAt(int position) {
+        return buffer.get(offset + position - 1);
+    }
+}
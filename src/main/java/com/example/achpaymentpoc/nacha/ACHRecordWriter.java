@@ -0,0 +1,290 @@
+package com.example.achpaymentpoc.nacha;
+
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * Fixed-width NACHA record encoder.
+ * <p>
+ * Fields are written straight into a reusable byte buffer as ASCII, so building a record allocates nothing.
+ * The buffer is flushed to the underlying {@link OutputStream} or {@link WritableByteChannel} once it can
+ * no longer hold another record. Every record is exactly {@link #RECORD_SIZE} bytes followed by a line feed.
+ */
+public class ACHRecordWriter implements Flushable, Closeable {
+
+    public static final int RECORD_SIZE = 94;
+    public static final int LINE_SIZE = RECORD_SIZE + 1; // record plus '\n'
+    public static final int BLOCKING_FACTOR = 10; // records per block, files are padded with '9' records to whole blocks
+    private static final int DEFAULT_BUFFERED_RECORDS = 1024; // ~95 KB per flush
+
+    private static final long[] POWERS_OF_TEN = new long[19];
+
+    static {
+        POWERS_OF_TEN[0] = 1;
+        for (int i = 1; i < POWERS_OF_TEN.length; i++) {
+            POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10;
+        }
+    }
+
+    private final OutputStream out;
+    private final WritableByteChannel channel;
+    private final byte[] buffer;
+    private final ByteBuffer channelView;
+    private int position;
+    private int recordStart;
+    private long bytesFlushed;
+
+    public ACHRecordWriter(OutputStream out) {
+        this(out, null, DEFAULT_BUFFERED_RECORDS);
+    }
+
+    public ACHRecordWriter(OutputStream out, int bufferedRecords) {
+        this(out, null, bufferedRecords);
+    }
+
+    public ACHRecordWriter(WritableByteChannel channel) {
+        this(null, channel, DEFAULT_BUFFERED_RECORDS);
+    }
+
+    public ACHRecordWriter(WritableByteChannel channel, int bufferedRecords) {
+        this(null, channel, bufferedRecords);
+    }
+
+    private ACHRecordWriter(OutputStream out, WritableByteChannel channel, int bufferedRecords) {
+        if (bufferedRecords < 1) {
+            throw new IllegalArgumentException("bufferedRecords must be positive");
+        }
+        this.out = out;
+        this.channel = channel;
+        this.buffer = new byte[bufferedRecords * LINE_SIZE];
+        this.channelView = channel != null ? ByteBuffer.wrap(buffer) : null;
+    }
+
+    /**
+     * Writes {@code value} right-justified and zero-filled in {@code width} digits. Values wider than the field are
+     * rejected rather than truncated; callers reduce entry hashes to their rightmost 10 digits themselves.
+     */
+    public ACHRecordWriter digits(long value, int width) {
+        if (value < 0) {
+            throw new IllegalArgumentException("Numeric ACH fields cannot be negative: " + value);
+        }
+        if (width < POWERS_OF_TEN.length && value >= POWERS_OF_TEN[width]) {
+            throw new IllegalArgumentException(value + " does not fit in a " + width + " digit ACH field");
+        }
+        for (int i = position + width - 1; i >= position; i--) {
+            buffer[i] = (byte) ('0' + (value % 10));
+            value /= 10;
+        }
+        position += width;
+        return this;
+    }
+
+    /**
+     * Writes the first {@code count} decimal digits of {@code value}, e.g. the 8 digit DFI identification
+     * taken from a 9 digit routing number. Values shorter than {@code count} digits are zero-filled on the left.
+     */
+    public ACHRecordWriter leadingDigits(long value, int count) {
+        return digits(leadingDigitsOf(value, count), count);
+    }
+
+    /**
+     * The first {@code count} decimal digits of {@code value}, the value written by {@link #leadingDigits(long, int)}.
+     */
+    public static long leadingDigitsOf(long value, int count) {
+        int length = digitCount(value);
+        return length > count ? value / POWERS_OF_TEN[length - count] : value;
+    }
+
+    /**
+     * Writes {@code value} left-justified and space-filled in {@code width} characters, truncating longer values.
+     * Characters outside printable ASCII are written as '?' since NACHA files are plain ASCII.
+     */
+    public ACHRecordWriter alpha(CharSequence value, int width) {
+        return alpha(value, 0, width);
+    }
+
+    /**
+     * Same as {@link #alpha(CharSequence, int)} but starts reading {@code value} at {@code offset}.
+     */
+    public ACHRecordWriter alpha(CharSequence value, int offset, int width) {
+        encodeAlpha(value, offset, buffer, position, width);
+        position += width;
+        return this;
+    }
+
+    public ACHRecordWriter ascii(byte[] constant) {
+        return ascii(constant, 0, constant.length);
+    }
+
+    /**
+     * Copies {@code length} already encoded bytes, e.g. a field pre-rendered by {@link #encodeAlpha}.
+     */
+    public ACHRecordWriter ascii(byte[] source, int offset, int length) {
+        System.arraycopy(source, offset, buffer, position, length);
+        position += length;
+        return this;
+    }
+
+    public ACHRecordWriter character(char c) {
+        buffer[position++] = (byte) c;
+        return this;
+    }
+
+    public ACHRecordWriter spaces(int width) {
+        return fill(' ', width);
+    }
+
+    public ACHRecordWriter fill(char c, int width) {
+        for (int i = 0; i < width; i++) {
+            buffer[position + i] = (byte) c;
+        }
+        position += width;
+        return this;
+    }
+
+    /**
+     * Terminates the current record with a line feed and flushes the buffer when it cannot hold another record.
+     */
+    public void endRecord() throws IOException {
+        endRecord(true);
+    }
+
+    /**
+     * Terminates the current record, optionally without the trailing line feed (used for the last line of a file).
+     */
+    public void endRecord(boolean newLine) throws IOException {
+        int length = position - recordStart;
+        if (length != RECORD_SIZE) {
+            throw new IllegalStateException("ACH record must be " + RECORD_SIZE + " bytes but was " + length);
+        }
+        if (newLine) {
+            buffer[position++] = '\n';
+        }
+        recordStart = position;
+        if (buffer.length - position < LINE_SIZE) {
+            drain();
+        }
+    }
+
+    /**
+     * Appends complete, already encoded records (for example a batch rendered by another writer). Small blocks are
+     * copied into the buffer, larger ones are written through after draining it.
+     */
+    public void writeRecords(byte[] records, int offset, int length) throws IOException {
+        if (position != recordStart) {
+            throw new IllegalStateException("Cannot append records in the middle of a record");
+        }
+        if (buffer.length - position >= length + LINE_SIZE) {
+            System.arraycopy(records, offset, buffer, position, length);
+            position += length;
+            recordStart = position;
+            return;
+        }
+        drain();
+        if (out != null) {
+            out.write(records, offset, length);
+        } else {
+            ByteBuffer view = ByteBuffer.wrap(records, offset, length);
+            while (view.hasRemaining()) {
+                channel.write(view);
+            }
+        }
+        bytesFlushed += length;
+    }
+
+    /**
+     * Drops everything still held in the buffer, including a partly written record, for example after a field was
+     * rejected halfway through a record.
+     */
+    public void discard() {
+        position = 0;
+        recordStart = 0;
+    }
+
+    /**
+     * Total number of bytes emitted so far, including bytes still held in the buffer.
+     */
+    public long bytesWritten() {
+        return bytesFlushed + position;
+    }
+
+    @Override
+    public void flush() throws IOException {
+        drain();
+        if (out != null) {
+            out.flush();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        flush();
+    }
+
+    private void drain() throws IOException {
+        if (position != recordStart) {
+            throw new IllegalStateException("Cannot flush in the middle of a record");
+        }
+        if (position == 0) {
+            return;
+        }
+        if (out != null) {
+            out.write(buffer, 0, position);
+        } else {
+            channelView.clear().limit(position);
+            while (channelView.hasRemaining()) {
+                channel.write(channelView);
+            }
+        }
+        bytesFlushed += position;
+        position = 0;
+        recordStart = 0;
+    }
+
+    /**
+     * Parses the ASCII digits {@code value[start, end)} without allocating a substring.
+     */
+    public static long parseDigits(CharSequence value, int start, int end) {
+        if (value == null || value.length() < end) {
+            throw new NumberFormatException("Expected at least " + end + " digits in: " + value);
+        }
+        long result = 0;
+        for (int i = start; i < end; i++) {
+            char c = value.charAt(i);
+            if (c < '0' || c > '9') {
+                throw new NumberFormatException("Non-numeric character '" + c + "' in: " + value);
+            }
+            result = result * 10 + (c - '0');
+        }
+        return result;
+    }
+
+    /**
+     * Encodes an alphanumeric field into {@code target} exactly as {@link #alpha(CharSequence, int, int)} writes it.
+     */
+    public static void encodeAlpha(CharSequence value, int offset, byte[] target, int targetOffset, int width) {
+        int length = value == null ? 0 : Math.max(0, Math.min(width, value.length() - offset));
+        for (int i = 0; i < length; i++) {
+            target[targetOffset + i] = asciiChar(value.charAt(offset + i));
+        }
+        for (int i = length; i < width; i++) {
+            target[targetOffset + i] = ' ';
+        }
+    }
+
+    public static byte asciiChar(char c) {
+        return (byte) (c >= ' ' && c <= '~' ? c : '?');
+    }
+
+    static int digitCount(long value) {
+        int count = 1;
+        while (count < POWERS_OF_TEN.length && value >= POWERS_OF_TEN[count]) {
+            count++;
+        }
+        return count;
+    }
+}
@@ -1,18 +1,38 @@
 package com.example.achpaymentpoc.services;
 
 import com.example.achpaymentpoc.dto.ACHPaymentRequest;
+import com.example.achpaymentpoc.nacha.ACHFileReport;
+import com.example.achpaymentpoc.upload.ACHUploadResult;
+import com.example.achpaymentpoc.validation.ACHPaymentValidator;
+import com.example.achpaymentpoc.validation.ACHValidationReport;
 import org.springframework.http.ResponseEntity;
 
 import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Iterator;
 import java.util.List;
 
 public interface ACHService {
 
    String generateACHFile(List<ACHPaymentRequest> paymentRequests);
 
+   void generateACHFile(List<ACHPaymentRequest> paymentRequests, OutputStream out) throws IOException;
+
+   void generateACHFile(Iterator<ACHPaymentRequest> paymentRequests, OutputStream out) throws IOException;
+
    void writeACHFile(List<ACHPaymentRequest> paymentRequests, String filePath) throws IOException;
 
+   void writeACHFile(Iterator<ACHPaymentRequest> paymentRequests, String filePath) throws IOException;
+
+   List<String> writeACHFiles(List<ACHPaymentRequest> paymentRequests, String outputDirectory, boolean gzip) throws IOException;
+
+   ACHFileReport verifyACHFile(String filePath) throws IOException;
+
    ResponseEntity<String> validateACHPaymentRequest(List<ACHPaymentRequest> achPaymentRequest);
 
+   ACHValidationReport validatePaymentRequests(List<ACHPaymentRequest> paymentRequests, ACHPaymentValidator.Mode mode);
+
    void uploadFileToServer(String filePath) throws IOException;
+
+   List<ACHUploadResult> uploadFilesToServer(List<String> filePaths) throws IOException;
 }
@@ -0,0 +1,428 @@
+package com.example.achpaymentpoc.services.impl;
+
+import com.example.achpaymentpoc.batch.ACHBatch;
+import com.example.achpaymentpoc.batch.ACHBatchKey;
+import com.example.achpaymentpoc.batch.ACHFileTotals;
+import com.example.achpaymentpoc.dto.ACHDailyFileStatus;
+import com.example.achpaymentpoc.dto.ACHPaymentRequest;
+import com.example.achpaymentpoc.nacha.ACHAmounts;
+import com.example.achpaymentpoc.nacha.ACHRecordWriter;
+import com.example.achpaymentpoc.validation.ACHPaymentValidator;
+import com.example.achpaymentpoc.validation.ACHValidationException;
+import com.example.achpaymentpoc.validation.ACHValidationReport;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * Builds the day's ACH file one payment at a time.
+ * <p>
+ * Each batch spools its entry detail records to its own file, and batch and file control totals are kept as running
+ * state, so appending a payment costs one record write and one journal write however large the file has grown.
+ * {@link #finalizeFile} writes the file header, then each batch header, spooled entries and batch control, then the
+ * file control record, into the output file.
+ * <p>
+ * Every append is recorded in an append-only journal holding the batch's running totals and spool length after it,
+ * and the running state only takes the new totals once the journal holds them. With {@code ach.daily.sync-journal}
+ * on, the spool is forced to disk before the journal record is written and forced after it. On startup the journal is
+ * replayed to restore the open file, and spools are truncated back to their last journaled length, so a crash never
+ * needs a rebuild and never leaves half-written entries behind. A spool shorter than its journaled length means
+ * entries were lost, and recovery fails rather than finalize a file without them.
+ * <p>
+ * Finalization is journaled once the complete file is on disk and before it is renamed into place. A restart that
+ * finds that record finishes the rename and starts the new day, so the same payments are never finalized twice.
+ */
+@Slf4j
+@Service
+public class ACHDailyFileBuilder {
+
+    private static final byte FILE_OPENED = 'F';
+    private static final byte BATCH_OPENED = 'B';
+    private static final byte ENTRY_APPENDED = 'E';
+    private static final byte FILE_FINALIZED = 'C';
+    private static final String JOURNAL = "journal.log";
+
+    private final ACHServiceImpl achService;
+    private final Path directory;
+    private final boolean syncJournal;
+
+    private FileChannel journal;
+    private ACHPaymentRequest headerRequest; // first payment of the day, supplies the file header
+    private final Map<ACHBatchKey, OpenBatch> batches = new LinkedHashMap<>(); // batch each key currently appends to
+    private final List<OpenBatch> batchesById = new ArrayList<>();
+    private int entryCount; // entries appended to the open file
+    private Path finalizedTemp; // set by replay when a finalization was journaled but not completed
+    private Path finalizedTarget;
+
+    public ACHDailyFileBuilder(ACHServiceImpl achService,
+                               @Value("${ach.daily.dir:ach-daily}") String directory,
+                               @Value("${ach.daily.sync-journal:true}") boolean syncJournal) {
+        this.achService = achService;
+        this.directory = Paths.get(directory);
+        this.syncJournal = syncJournal;
+    }
+
+    private static class OpenBatch {
+        final int id;
+        final FileChannel spool;
+        final ACHRecordWriter writer;
+        ACHBatch totals;
+        long spoolLength;
+
+        OpenBatch(int id, ACHBatchKey key, FileChannel spool) {
+            this.id = id;
+            this.spool = spool;
+            this.writer = new ACHRecordWriter(spool, 1); // single record buffer, every entry goes straight to disk
+            this.totals = ACHBatch.totalsOnly(key);
+        }
+    }
+
+    @PostConstruct
+    public synchronized void recover() throws IOException {
+        Files.createDirectories(directory);
+        Path journalPath = directory.resolve(JOURNAL);
+        long validLength = Files.exists(journalPath) ? replay(journalPath) : 0;
+        journal = FileChannel.open(journalPath, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        journal.truncate(validLength); // drop a torn record from a crash mid-write
+        journal.position(validLength);
+        if (finalizedTarget != null) {
+            Path target = finalizedTarget; // completing the finalization resets the builder
+            completeFinalization(finalizedTemp, target);
+            log.info("Completed the finalization of {} interrupted by a restart", target);
+            return;
+        }
+        for (OpenBatch batch : batchesById) {
+            long spoolSize = batch.spool.size();
+            if (spoolSize < batch.spoolLength) {
+                throw new IOException("Spool of batch " + batch.id + " holds " + spoolSize + " bytes but "
+                        + batch.spoolLength + " were journaled, journaled entries have been lost");
+            }
+            batch.spool.truncate(batch.spoolLength); // drop entries written but never journaled
+            batch.spool.position(batch.spoolLength);
+        }
+        if (headerRequest != null) {
+            log.info("Recovered open ACH file with {} entries in {} batches", entryCount, batchesById.size());
+        }
+    }
+
+    /**
+     * Appends payments to the open file, opening one if needed.
+     */
+    public synchronized ACHDailyFileStatus append(List<ACHPaymentRequest> paymentRequests) throws IOException {
+        // reject the whole list before anything is written for it
+        ACHValidationReport report = achService.validatePaymentRequests(paymentRequests, ACHPaymentValidator.Mode.FAIL_FAST);
+        if (report.isValid()) {
+            // batches are split before their totals overflow, but the day's file control totals must still fit
+            ACHFileTotals totals = totals();
+            report = ACHPaymentValidator.validateFileTotals(paymentRequests, totals.getTotalDebitAmount(), totals.getTotalCreditAmount());
+        }
+        if (!report.isValid()) {
+            throw new ACHValidationException(report);
+        }
+        for (ACHPaymentRequest request : paymentRequests) {
+            if (headerRequest == null) {
+                headerRequest = request;
+                journal(FILE_OPENED, out -> {
+                    writeString(out, request.getOriginatorCName());
+                    out.writeLong(request.getOriginatorRoutingNumber());
+                    out.writeLong(request.getOriginatorAccountNumber());
+                    writeString(out, request.getOriginatorBDestination());
+                });
+            }
+            OpenBatch batch = batchFor(request);
+            // the running state takes the new totals only once they are journaled, so a failure leaves it as it was
+            ACHBatch current = batch.totals;
+            ACHBatch totals = ACHBatch.restore(current.getKey(), current.getEntryCount(), current.getEntryHashSum(),
+                    current.getTotalDebitAmount(), current.getTotalCreditAmount());
+            totals.accumulate(request);
+            long spoolLength = batch.spoolLength + ACHRecordWriter.LINE_SIZE;
+            int appended = entryCount + 1;
+            long journalLength = journal.position();
+            try {
+                // the trace number comes from the originating DFI's counter, so it is never reused after a restart
+                int traceSequence = achService.allocateTraceSequences(current.getKey(), 1) + 1;
+                achService.generateEntryDetailRecord(request, current.getKey(), traceSequence, batch.writer);
+                if (syncJournal) {
+                    batch.spool.force(false); // the entry must be on disk before the journal says it is
+                }
+                journal(ENTRY_APPENDED, out -> {
+                    out.writeInt(batch.id);
+                    out.writeInt(appended);
+                    out.writeInt(totals.getEntryCount());
+                    out.writeLong(totals.getEntryHashSum());
+                    out.writeLong(totals.getTotalDebitAmount());
+                    out.writeLong(totals.getTotalCreditAmount());
+                    out.writeLong(spoolLength);
+                });
+            } catch (IOException | RuntimeException e) {
+                // leave no partial record in the writer, no unjournaled line in the spool and no torn journal record
+                batch.writer.discard();
+                batch.spool.truncate(batch.spoolLength);
+                batch.spool.position(batch.spoolLength);
+                journal.truncate(journalLength);
+                journal.position(journalLength);
+                throw e;
+            }
+            batch.totals = totals;
+            batch.spoolLength = spoolLength;
+            entryCount = appended;
+        }
+        return status(null);
+    }
+
+    public synchronized ACHDailyFileStatus status() {
+        return status(null);
+    }
+
+    /**
+     * Writes the open file to {@code filePath} with its batch and file control records and starts a new day.
+     */
+    public synchronized ACHDailyFileStatus finalizeFile(String filePath) throws IOException {
+        if (headerRequest == null) {
+            throw new IllegalStateException("No payments have been appended since the last cutoff");
+        }
+        Path target = Paths.get(filePath).toAbsolutePath();
+        Path temp = Files.createTempFile(target.getParent(), target.getFileName().toString(), ".tmp");
+        ACHFileTotals fileTotals = new ACHFileTotals();
+        try {
+            try (FileChannel out = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+                ACHRecordWriter writer = new ACHRecordWriter(out);
+                achService.generateFileHeaderRecord(headerRequest, writer);
+                for (OpenBatch batch : batchesById) {
+                    int batchNumber = fileTotals.getBatchCount();
+                    achService.generateBatchHeaderRecord(batch.totals.getKey(), batchNumber, writer);
+                    writer.flush();
+                    transfer(batch.spool, batch.spoolLength, out);
+                    achService.generateBatchControlRecord(batch.totals, batchNumber, writer);
+                    fileTotals.add(batch.totals);
+                }
+                achService.generateFileControlRecord(fileTotals, writer);
+                writer.flush();
+                out.force(true);
+            }
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(temp);
+            throw e;
+        }
+        ACHDailyFileStatus status = status(target.toString());
+        long journalLength = journal.position();
+        try {
+            journal(FILE_FINALIZED, out -> {
+                writeString(out, temp.toString());
+                writeString(out, target.toString());
+            });
+            if (!syncJournal) {
+                journal.force(false); // the finalization must be durable before the file is moved
+            }
+            Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException | RuntimeException e) {
+            // the payments stay open, so take the finalization back out of the journal
+            journal.truncate(journalLength);
+            journal.position(journalLength);
+            journal.force(false);
+            Files.deleteIfExists(temp);
+            throw e;
+        }
+        completeFinalization(temp, target);
+        return status;
+    }
+
+    /**
+     * Finishes a journaled finalization: moves the file into place unless that already happened, indexes it and
+     * starts the new day.
+     */
+    private void completeFinalization(Path temp, Path target) throws IOException {
+        if (Files.exists(temp)) {
+            Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        }
+        achService.indexTraceNumbers(target);
+        reset();
+    }
+
+    @PreDestroy
+    public synchronized void close() throws IOException {
+        for (OpenBatch batch : batchesById) {
+            batch.spool.close();
+        }
+        if (journal != null) {
+            journal.close();
+        }
+    }
+
+    private OpenBatch batchFor(ACHPaymentRequest request) throws IOException {
+        ACHBatchKey key = ACHBatchKey.of(request);
+        OpenBatch batch = batches.get(key);
+        if (batch == null || batch.totals.getEntryCount() == ACHBatch.MAX_ENTRIES
+                || !batch.totals.hasRoomFor(ACHAmounts.toCents(request.getAmount()))) {
+            // a full batch stays in the file and the key continues in a new one
+            batch = openBatch(batchesById.size(), key);
+            journal(BATCH_OPENED, out -> {
+                writeString(out, key.getOriginatorCName());
+                out.writeLong(key.getOriginatorRoutingNumber());
+                out.writeLong(key.getOriginatorAccountNumber());
+                writeString(out, key.getStandardEntryClassCode());
+                writeString(out, key.getEffectiveEntryDate());
+                out.writeInt(key.getServiceClassCode());
+            });
+        }
+        return batch;
+    }
+
+    private OpenBatch openBatch(int id, ACHBatchKey key) throws IOException {
+        FileChannel spool = FileChannel.open(directory.resolve("batch-" + id + ".spool"),
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        OpenBatch batch = new OpenBatch(id, key, spool);
+        batches.put(key, batch);
+        batchesById.add(batch);
+        return batch;
+    }
+
+    private ACHFileTotals totals() {
+        ACHFileTotals totals = new ACHFileTotals();
+        batchesById.forEach(batch -> totals.add(batch.totals));
+        return totals;
+    }
+
+    private ACHDailyFileStatus status(String filePath) {
+        ACHFileTotals totals = totals();
+        return new ACHDailyFileStatus(totals.getBatchCount(), totals.getEntryCount(), totals.getEntryHash(),
+                totals.getTotalDebitAmount(), totals.getTotalCreditAmount(), filePath);
+    }
+
+    private void reset() throws IOException {
+        for (OpenBatch batch : batchesById) {
+            batch.spool.close();
+            Files.deleteIfExists(directory.resolve("batch-" + batch.id + ".spool"));
+        }
+        batches.clear();
+        batchesById.clear();
+        headerRequest = null;
+        entryCount = 0;
+        finalizedTemp = null;
+        finalizedTarget = null;
+        journal.truncate(0);
+        journal.position(0);
+        journal.force(true);
+    }
+
+    private static void transfer(FileChannel spool, long length, FileChannel out) throws IOException {
+        long position = 0;
+        while (position < length) {
+            long transferred = spool.transferTo(position, length - position, out);
+            if (transferred == 0) {
+                throw new IOException("Spool ended after " + position + " of " + length + " journaled bytes");
+            }
+            position += transferred;
+        }
+    }
+
+    // Journal records: int payload length, payload (type byte first), long CRC32 of the payload
+
+    private interface JournalPayload {
+        void writeTo(DataOutputStream out) throws IOException;
+    }
+
+    private void journal(byte type, JournalPayload payload) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeByte(type);
+        payload.writeTo(out);
+        byte[] record = bytes.toByteArray();
+        CRC32 crc = new CRC32();
+        crc.update(record);
+        ByteBuffer buffer = ByteBuffer.allocate(4 + record.length + 8);
+        buffer.putInt(record.length).put(record).putLong(crc.getValue()).flip();
+        while (buffer.hasRemaining()) {
+            journal.write(buffer);
+        }
+        if (syncJournal) {
+            journal.force(false);
+        }
+    }
+
+    /**
+     * Restores state from the journal and returns the length of its valid prefix.
+     */
+    private long replay(Path journalPath) throws IOException {
+        long validLength = 0;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(journalPath)))) {
+            while (true) {
+                byte[] record;
+                try {
+                    int length = in.readInt();
+                    if (length <= 0 || length > 4096) {
+                        break;
+                    }
+                    record = new byte[length];
+                    in.readFully(record);
+                    CRC32 crc = new CRC32();
+                    crc.update(record);
+                    if (in.readLong() != crc.getValue()) {
+                        break;
+                    }
+                } catch (EOFException e) {
+                    break;
+                }
+                apply(new DataInputStream(new ByteArrayInputStream(record)));
+                validLength += 4 + record.length + 8;
+            }
+        }
+        return validLength;
+    }
+
+    private void apply(DataInputStream record) throws IOException {
+        byte type = record.readByte();
+        if (type == FILE_OPENED) {
+            headerRequest = new ACHPaymentRequest();
+            headerRequest.setOriginatorCName(readString(record));
+            headerRequest.setOriginatorRoutingNumber(record.readLong());
+            headerRequest.setOriginatorAccountNumber(record.readLong());
+            headerRequest.setOriginatorBDestination(readString(record));
+        } else if (type == BATCH_OPENED) {
+            ACHBatchKey key = new ACHBatchKey(readString(record), record.readLong(), record.readLong(),
+                    readString(record), readString(record), record.readInt());
+            openBatch(batchesById.size(), key);
+        } else if (type == ENTRY_APPENDED) {
+            OpenBatch batch = batchesById.get(record.readInt());
+            entryCount = record.readInt();
+            batch.totals = ACHBatch.restore(batch.totals.getKey(), record.readInt(), record.readLong(),
+                    record.readLong(), record.readLong());
+            batch.spoolLength = record.readLong();
+        } else if (type == FILE_FINALIZED) {
+            finalizedTemp = Paths.get(readString(record));
+            finalizedTarget = Paths.get(readString(record));
+        } else {
+            throw new IOException("Unknown ACH journal record type " + type);
+        }
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        out.writeUTF(value == null ? "" : value);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        return in.readUTF();
+    }
+}
@@ -1,227 +1,680 @@
 package com.example.achpaymentpoc.services.impl;
 
+import com.example.achpaymentpoc.batch.ACHBatch;
+import com.example.achpaymentpoc.batch.ACHBatchKey;
+import com.example.achpaymentpoc.batch.ACHBatcher;
+import com.example.achpaymentpoc.batch.ACHEntryStore;
+import com.example.achpaymentpoc.batch.ACHFileSplitter;
+import com.example.achpaymentpoc.batch.ACHFileTotals;
 import com.example.achpaymentpoc.dto.ACHPaymentRequest;
+import com.example.achpaymentpoc.metrics.ACHMetrics;
+import com.example.achpaymentpoc.nacha.ACHAmounts;
+import com.example.achpaymentpoc.nacha.ACHFileIdModifiers;
+import com.example.achpaymentpoc.nacha.ACHFileReport;
+import com.example.achpaymentpoc.nacha.ACHFileVerifier;
+import com.example.achpaymentpoc.nacha.ACHRecordTemplateCache;
+import com.example.achpaymentpoc.nacha.ACHRecordView;
+import com.example.achpaymentpoc.nacha.ACHRecordWriter;
 import com.example.achpaymentpoc.services.ACHService;
-import org.springframework.http.HttpEntity;
-import org.springframework.http.HttpHeaders;
-import org.springframework.http.MediaType;
+import com.example.achpaymentpoc.trace.ACHTraceIndex;
+import com.example.achpaymentpoc.trace.ACHTraceSequences;
+import com.example.achpaymentpoc.upload.ACHFileUploader;
+import com.example.achpaymentpoc.upload.ACHUploadResult;
+import com.example.achpaymentpoc.validation.ACHPaymentValidator;
+import com.example.achpaymentpoc.validation.ACHValidationException;
+import com.example.achpaymentpoc.validation.ACHValidationReport;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Service;
-import org.springframework.util.LinkedMultiValueMap;
-import org.springframework.util.MultiValueMap;
-import org.springframework.web.client.RestTemplate;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
-import java.util.Date;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
 import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+import java.util.zip.GZIPOutputStream;
 
+@Slf4j
 @Service
 public class ACHServiceImpl implements ACHService {
 
+    private static final byte[] FILE_HEADER_PREFIX = ascii("101"); // record type 1, priority code 01
+    private static final byte[] FILE_HEADER_FORMAT = ascii("094101"); // record size 094, blocking factor 10, format code 1
+    private static final byte[] REFERENCE_CODE = ascii("00000000");
+    private static final byte[] FILE_CREATION_TIME = ascii("0000");
+    private static final byte[] COMPANY_ENTRY_DESCRIPTION = ascii("ACH PAYMEN");
+    private static final byte[] COMPANY_DESCRIPTIVE_DATE = ascii("220214"); // YYMMDD
+    private static final byte[] CREDIT_TRANSACTION_CODE = ascii("22"); // 22 for credit
+    private static final byte[] DEBIT_TRANSACTION_CODE = ascii("27"); // 27 for debit
+    private static final byte[] INDIVIDUAL_IDENTIFICATION = ascii("123456789012345");
+    private static final byte[] ENTRY_DETAIL_SUFFIX = ascii("A10"); // discretionary data A1, addenda record indicator 0
+
+    private static final int PARALLEL_CHUNK_ENTRIES = 4096; // entries rendered by one task, ~390 KB of output
+    private static final int GZIP_BUFFER_SIZE = 64 * 1024;
+
+    // Lists with at least this many entries render their batches in parallel
+    @Value("${ach.generation.parallel-threshold:50000}")
+    private int parallelThreshold = 50000;
+
+    // Bank limits for each file of a split run
+    @Value("${ach.output.max-entries-per-file:500000}")
+    private int maxEntriesPerFile = 500000;
+
+    @Value("${ach.output.max-file-bytes:104857600}")
+    private long maxFileBytes = 104857600;
+
+    @Autowired
+    private ACHFileUploader fileUploader;
+
+    // Trace number lookup of every plain file written, absent when generating outside the application
+    @Autowired(required = false)
+    private ACHTraceIndex traceIndex;
+
+    @Autowired
+    private ACHMetrics metrics = ACHMetrics.noop();
+
+    // Trace sequence counters of every originating DFI, shared by all generation paths
+    @Autowired
+    private ACHTraceSequences traceSequences = new ACHTraceSequences();
+
+    // File ID modifiers of every file generated today, shared by all generation paths
+    @Autowired
+    private ACHFileIdModifiers fileIdModifiers = new ACHFileIdModifiers();
+
+    // Precompiled header and control records of recently seen originators
+    @Autowired
+    private ACHRecordTemplateCache templates = new ACHRecordTemplateCache(1024);
+
     @Override
     public String generateACHFile(List<ACHPaymentRequest> paymentRequests) {
-        StringBuilder nachaFileBuilder = new StringBuilder(); // Create a StringBuilder to store the NACHA file content
+        ByteArrayOutputStream out = new ByteArrayOutputStream((paymentRequests.size() + 4) * ACHRecordWriter.LINE_SIZE);
+        try {
+            generateACHFile(paymentRequests, out);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e); // cannot happen for an in-memory stream
+        }
+        return out.toString(StandardCharsets.US_ASCII);
+    }
 
+    @Override
+    public void generateACHFile(List<ACHPaymentRequest> paymentRequests, OutputStream out) throws IOException {
+        ACHRecordWriter writer = new ACHRecordWriter(out);
+        generateACHFile(paymentRequests, writer);
+        writer.flush();
+    }
+
+    @Override
+    public void generateACHFile(Iterator<ACHPaymentRequest> paymentRequests, OutputStream out) throws IOException {
+        ACHRecordWriter writer = new ACHRecordWriter(out);
+        generateACHFile(paymentRequests, writer);
+        writer.flush();
+    }
+
+    private void generateACHFile(List<ACHPaymentRequest> paymentRequests, ACHRecordWriter writer) throws IOException {
+        if (paymentRequests.isEmpty()) {
+            throw new IllegalArgumentException("At least one ACH payment request is required");
+        }
+        // A single file cannot be split, so reject totals the file control record cannot hold before writing anything
+        ACHValidationReport report = ACHPaymentValidator.validateFileTotals(paymentRequests, 0, 0);
+        if (!report.isValid()) {
+            throw new ACHValidationException(report);
+        }
+        // Group the entries into batches by originator, SEC code, effective date and service class
+        Collection<ACHBatch> batches = ACHBatcher.group(paymentRequests);
+        generateACHFile(paymentRequests.get(0), fileIdModifiers.next(), batches, paymentRequests.size(), writer);
+    }
+
+    /**
+     * Writes one complete file of already grouped batches. Each batch takes its trace numbers from its originating
+     * DFI's counter, so neither the files a run is split into nor later runs share a trace number.
+     */
+    void generateACHFile(ACHPaymentRequest headerRequest, char fileIdModifier, Collection<ACHBatch> batches,
+                         int entryCount, ACHRecordWriter writer) throws IOException {
+        long started = System.nanoTime();
+        long bytesBefore = writer.bytesWritten();
         // Generate File Header Record
-        String fileHeaderRecord = generateFileHeaderRecord(paymentRequests.get(0));
-        nachaFileBuilder.append(fileHeaderRecord).append("\n");
-
-        int entryCount = 0; // Total number of entry detail records
-        int batchCount = 0; // Total number of batches
-        long entryHash = 0; // Sum of the routing numbers of all the entry detail records in the file
-        int batchHeaderCount = 0; // Total number of batch header records
-        int batchHeadFooterCount = 0;
-
-        // Generate Batch Header, Entry Detail, and Batch Control Records for each batch
-        for (ACHPaymentRequest request : paymentRequests) {
-            // Generate Batch Header Record
-            String batchHeaderRecord = generateBatchHeaderRecord(request, batchHeaderCount++);
-            nachaFileBuilder.append(batchHeaderRecord).append("\n");
-            // Generate Entry Detail Records
-            List<String> entryDetailRecords = generateEntryDetailRecords(request,++batchCount);
-            entryCount += entryDetailRecords.size();
-            for(String entryDetails:entryDetailRecords){
-                nachaFileBuilder.append(entryDetails).append("\n");
-                String routingNumber = entryDetails.substring(3,11);
-                entryHash += Long.parseLong(routingNumber);
+        generateFileHeaderRecord(headerRequest, fileIdModifier, writer);
+        metrics.fileHeader(System.nanoTime() - started);
+
+        ACHFileTotals totals = entryCount >= parallelThreshold
+                ? generateBatchesInParallel(batches, writer)
+                : generateBatches(batches, writer);
+
+        // Generate File Control Record and the block padding
+        long fileControlStarted = System.nanoTime();
+        generateFileControlRecord(totals, writer);
+        long finished = System.nanoTime();
+        metrics.fileControl(finished - fileControlStarted);
+        metrics.generation(totals.getEntryCount(), writer.bytesWritten() - bytesBefore, finished - started);
+    }
+
+    private ACHFileTotals generateBatches(Collection<ACHBatch> batches, ACHRecordWriter writer) throws IOException {
+        ACHFileTotals totals = new ACHFileTotals();
+        for (ACHBatch batch : batches) {
+            // traceSequence is the entry detail sequence number used in the trace number
+            int traceSequence = allocateTraceSequences(batch.getKey(), batch.getEntryCount());
+            int batchNumber = totals.getBatchCount(); // 0 and increment by 1 for each batch
+            long started = System.nanoTime();
+            generateBatchHeaderRecord(batch.getKey(), batchNumber, writer);
+            long headerWritten = System.nanoTime();
+            generateEntryDetailRecords(batch, 0, batch.getEntryCount(), traceSequence, writer);
+            long entriesWritten = System.nanoTime();
+            generateBatchControlRecord(batch, batchNumber, writer);
+            metrics.batchHeader(headerWritten - started);
+            metrics.entryDetails(entriesWritten - headerWritten);
+            metrics.batchControl(System.nanoTime() - entriesWritten);
+            totals.add(batch);
+        }
+        return totals;
+    }
+
+    /**
+     * Renders batches on the common fork/join pool. Each batch is cut into chunks of at most
+     * {@link #PARALLEL_CHUNK_ENTRIES} entries whose batch number and trace numbers are fixed up front, so every chunk
+     * renders to the same bytes it would sequentially. Chunks are written back in submission order, a window of them
+     * at a time to keep memory bounded, which makes the output byte-identical to {@link #generateBatches}.
+     * Control totals are integer sums accumulated while grouping, so their reduction does not depend on ordering.
+     */
+    private ACHFileTotals generateBatchesInParallel(Collection<ACHBatch> batches, ACHRecordWriter writer) throws IOException {
+        int windowSize = Math.max(2, ForkJoinPool.getCommonPoolParallelism() * 4);
+        List<BatchChunkTask> window = new ArrayList<>(windowSize);
+        ACHFileTotals totals = new ACHFileTotals();
+        for (ACHBatch batch : batches) {
+            int batchNumber = totals.getBatchCount();
+            int entryCount = batch.getEntryCount();
+            int traceSequence = allocateTraceSequences(batch.getKey(), entryCount);
+            for (int from = 0; from < entryCount; from += PARALLEL_CHUNK_ENTRIES) {
+                int to = Math.min(entryCount, from + PARALLEL_CHUNK_ENTRIES);
+                window.add(new BatchChunkTask(batch, batchNumber, from, to, traceSequence + from));
+                if (window.size() == windowSize) {
+                    writeRenderedChunks(window, writer);
+                }
             }
-            entryHash %= 10000000000L;
+            totals.add(batch);
+        }
+        writeRenderedChunks(window, writer);
+        return totals;
+    }
 
-            // Generate Batch Control Record
-            String batchControlRecord = generateBatchControlRecord(request, entryDetailRecords.size(),entryHash,batchHeadFooterCount++);
-            nachaFileBuilder.append(batchControlRecord).append("\n");
+    private void writeRenderedChunks(List<BatchChunkTask> window, ACHRecordWriter writer) throws IOException {
+        ForkJoinTask.invokeAll(window);
+        for (BatchChunkTask task : window) {
+            byte[] records = task.join();
+            writer.writeRecords(records, 0, records.length);
         }
+        window.clear();
+    }
 
-        // Generate File Control Record
-        String fileControlRecord = generateFileControlRecord(batchCount, entryCount,entryHash);
-        nachaFileBuilder.append(fileControlRecord).append("\n");
-        String padding = new String(new char[94]).replace("\0", "9");// 94 characters per line, 10 lines per block
-        nachaFileBuilder.append(padding);
+    /**
+     * Renders entries {@code [from, to)} of a batch, preceded by the batch header for the first chunk and followed by
+     * the batch control record for the last one.
+     */
+    private class BatchChunkTask extends RecursiveTask<byte[]> {
+
+        private final ACHBatch batch;
+        private final int batchNumber;
+        private final int from;
+        private final int to;
+        private final int traceSequence;
+
+        BatchChunkTask(ACHBatch batch, int batchNumber, int from, int to, int traceSequence) {
+            this.batch = batch;
+            this.batchNumber = batchNumber;
+            this.from = from;
+            this.to = to;
+            this.traceSequence = traceSequence;
+        }
 
-        return nachaFileBuilder.toString();
+        @Override
+        protected byte[] compute() {
+            int records = to - from + 2;
+            ByteArrayOutputStream out = new ByteArrayOutputStream(records * ACHRecordWriter.LINE_SIZE);
+            ACHRecordWriter chunkWriter = new ACHRecordWriter(out, records);
+            try {
+                long started = System.nanoTime();
+                if (from == 0) {
+                    generateBatchHeaderRecord(batch.getKey(), batchNumber, chunkWriter);
+                    long headerWritten = System.nanoTime();
+                    metrics.batchHeader(headerWritten - started);
+                    started = headerWritten;
+                }
+                generateEntryDetailRecords(batch, from, to, traceSequence, chunkWriter);
+                long entriesWritten = System.nanoTime();
+                metrics.entryDetails(entriesWritten - started);
+                if (to == batch.getEntryCount()) {
+                    generateBatchControlRecord(batch, batchNumber, chunkWriter);
+                    metrics.batchControl(System.nanoTime() - entriesWritten);
+                }
+                chunkWriter.flush();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e); // cannot happen for an in-memory stream
+            }
+            return out.toByteArray();
+        }
     }
 
+    private void generateACHFile(Iterator<ACHPaymentRequest> paymentRequests, ACHRecordWriter writer) throws IOException {
+        if (!paymentRequests.hasNext()) {
+            throw new IllegalArgumentException("At least one ACH payment request is required");
+        }
+        // Generate File Header Record, requests are only read once so the header is taken from the first one
+        long started = System.nanoTime();
+        long bytesBefore = writer.bytesWritten();
+        ACHPaymentRequest request = paymentRequests.next();
+        generateFileHeaderRecord(request, writer);
+        metrics.fileHeader(System.nanoTime() - started);
+
+        // Streamed requests cannot be grouped without holding them all, so a batch spans each run of consecutive
+        // requests sharing the same batch key, up to the batch entry and amount limits, and only its control totals are
+        // kept. The file cannot be split, so a request that takes the file totals past 12 digits fails the generation.
+        // Entries arrive one at a time, so only the overall generation is timed here to keep the per-entry cost down
+        ACHFileTotals totals = new ACHFileTotals();
+        ACHBatch batch = null;
+        int index = 0;
+        while (true) {
+            long amount = ACHAmounts.toCents(request.getAmount());
+            if (batch == null || !batch.getKey().matches(request) || batch.getEntryCount() == ACHBatch.MAX_ENTRIES
+                    || !batch.hasRoomFor(amount)) {
+                if (batch != null) {
+                    generateBatchControlRecord(batch, totals.getBatchCount(), writer);
+                    totals.add(batch);
+                }
+                batch = ACHBatch.totalsOnly(ACHBatchKey.of(request));
+                generateBatchHeaderRecord(batch.getKey(), totals.getBatchCount(), writer);
+            }
+            if (!totals.hasRoomFor(batch, amount)) {
+                throw new ACHValidationException(new ACHValidationReport(index + 1,
+                        List.of(ACHPaymentValidator.fileTotalError(index, request))));
+            }
+            generateEntryDetailRecord(request, batch.getKey(), allocateTraceSequences(batch.getKey(), 1) + 1, writer);
+            batch.accumulate(request);
+            if (!paymentRequests.hasNext()) {
+                break;
+            }
+            request = paymentRequests.next();
+            index++;
+        }
+        generateBatchControlRecord(batch, totals.getBatchCount(), writer);
+        totals.add(batch);
+
+        // Generate File Control Record and the block padding
+        long fileControlStarted = System.nanoTime();
+        generateFileControlRecord(totals, writer);
+        long finished = System.nanoTime();
+        metrics.fileControl(finished - fileControlStarted);
+        metrics.generation(totals.getEntryCount(), writer.bytesWritten() - bytesBefore, finished - started);
+    }
 
-    private static int fileIdModifierCounter = 0;
-    private String generateFileHeaderRecord(ACHPaymentRequest request) {
+    void generateFileHeaderRecord(ACHPaymentRequest request, ACHRecordWriter writer) throws IOException {
+        generateFileHeaderRecord(request, fileIdModifiers.next(), writer);
+    }
+
+    void generateFileHeaderRecord(ACHPaymentRequest request, char fileIdModifier, ACHRecordWriter writer) throws IOException {
         // Generate File Header Record with provided ACHPaymentRequest
-        char fileIdModifier = (char) ('A' + fileIdModifierCounter++);
-        if (fileIdModifier > 'Z') {
-            fileIdModifier = 'A';
-            fileIdModifierCounter = 0;
-        }
-
-        // Formatting the fields to fit the specifications
-        String recordTypeCode = "1";
-        String priorityCode = "01";
-        long immediateDestination = request.getOriginatorRoutingNumber();
-        long immediateOrigin = request.getOriginatorAccountNumber();
-        Date date = new Date();
-        int currentYear = date.getYear() - 100;
-        int currentMonth = date.getMonth() + 1;
-        int currentDay = date.getDate(); // Using getDate() instead of getDay()
-        String fileCreationDate = String.format("%02d%02d%02d", currentYear, currentMonth, currentDay);
-        String fileCreationTime = "0000";
-        String fileIDModifier = String.valueOf(fileIdModifier);
-        String recordSize = "094";
-        String blockingFactor = "10";
-        String formatCode = "1";
-        String immediateBDestinationName = request.getOriginatorBDestination()+"              ";
-        String immediateOriginName = request.getOriginatorCName()+"             ";
-        String referenceCode = "00000000"; // 8 blank spaces
-
-        // Using %010d for long values immediateDestination and immediateOrigin
-        return String.format("%s%s %d %d%s%s%s%s%s%s%s %s %s",
-                recordTypeCode, priorityCode, immediateDestination, immediateOrigin, fileCreationDate, fileCreationTime,
-                fileIDModifier, recordSize, blockingFactor, formatCode, immediateBDestinationName, immediateOriginName, referenceCode);
-    }
-
-
-
-
-
-    private String generateBatchHeaderRecord(ACHPaymentRequest request, int batchHeaderCount) {
-        // Generate Batch Header Record with provided ACHPaymentRequest and batch count
-        String recordTypeCode = "5";
-        String serviceClassCode = "220"; //it can be 200, 220, 225, 280 or 225 , 200 for credit, 220 for debit, 225 for mixed, 280 for prenote
-        String companyName = request.getOriginatorCName()+"       ";
-        String companyDiscretionaryData = "                    "; //optional field
-        long companyIdentification = Long.parseLong("1"+request.getOriginatorAccountNumber()); // 9 digit routing number
-        String standardEntryClassCode = "PPD"; // PPD, CCD, WEB, TEL, ARC, BOC, POP, RCK, IAT, MTE, POS, SHR, XCK used for different types of transactions like payroll, vendor payments, consumer payments, telephone initiated entries, internet initiated entries, accounts receivable entries, back office conversion, point of purchase, re-presented check entries, international ACH transactions, machine transfer entries, point of sale, and share draft presentment
-        String companyEntryDescription = "ACH PAYMEN"; // 10 character description
-        String companyDescriptiveDate = "220214"; // YYMMDD
-        String effectiveEntryDate = "220214"; // YYMMDD
-        String settlementDate = " "; // julian date setlement date filled by the bank
-        String originatorStatusCode = "1"; // 1 for single entry, 2 for recurring, 3 for first in a series, 4 for final in a series
-        String originatorDFIIdentification = String.valueOf(request.getOriginatorAccountNumber()).substring(0, 8); // 8 digit routing number
-        String batchNumber = String.format("%07d", batchHeaderCount); // 7 digit batch number 0 and increment by 1 for each batch
-        return String.format("%s%s%s%s%d%s%s %s%s %s%s%s%s",recordTypeCode,
-                serviceClassCode, companyName, companyDiscretionaryData, companyIdentification,
-                standardEntryClassCode, companyEntryDescription, companyDescriptiveDate, effectiveEntryDate,
-                settlementDate, originatorStatusCode, originatorDFIIdentification, batchNumber);
-    }
-
-    private List<String> generateEntryDetailRecords(ACHPaymentRequest request, int batchCount) {
-        // Generate Entry Detail Records for provided ACHPaymentRequest
-        List<String> entryDetailRecords = new ArrayList<>();
-
-        // Example Entry Detail Record
-        String recordTypeCode = "6";
-        String transactionCode = "22"; // 22 for credit, 27 for debit
-        String receivingDFIIdentification = String.valueOf(request.getReceiverRoutingNumber()).substring(0, 8); // 8 digit routing number
-        String checkDigit = String.valueOf(request.getReceiverRoutingNumber()).substring(8); // 1 digit routing number
-        String receivingDFIAccountNumber = request.getReceiverAccountNumber()+"        "; // 17 digit account number
-        String amount = String.format("%010d", (long) request.getAmount()); // 10 digit amount
-        String individualIdentificationNumber = "123456789012345"; // 15 digit identification number
-        String individualName = request.getReceiverName()+"              "; // 22 digit name
-        String discretionaryData = "A1"; // 2 digit discretionary data
-        String addendaRecordIndicator = "0"; // 1 digit addenda record indicator 0 for no addenda
-        String traceNumber = String.valueOf(request.getOriginatorAccountNumber()).substring(0, 8) + String.format("%07d", batchCount); // 15 digit trace number
-
-        entryDetailRecords.add(String.format("%s%s%s%s%s%s%s%s%s%s%s", recordTypeCode, transactionCode,
-                receivingDFIIdentification, checkDigit, receivingDFIAccountNumber, amount,
-                individualIdentificationNumber, individualName, discretionaryData, addendaRecordIndicator, traceNumber));
-
-        return entryDetailRecords;
-    }
-
-    private String generateBatchControlRecord(ACHPaymentRequest request, int entryCount,long entryHashe,int batchHeadFooterCount) {
-        // Generate Batch Control Record with provided ACHPaymentRequest and entry count
-        String recordTypeCode = "8";
-        String serviceClassCode = "220"; //it can be 200, 220, 225, 280 or 225 , 200 for credit, 220 for debit, 225 for mixed, 280 for prenote
-        String entryAddendaCount = String.format("%06d",entryCount); // Example entry/addenda count (number of entry detail records in the batch
-        String entryHash = String.format("%010d", entryHashe);; // Example entry hash (sum of the routing numbers of all the entry detail records in the batch)
-        String totalDebitAmount = "000000000"; // Example total debit amount - 12 digit
-        String totalCreditAmount = "123456789"; // Example total credit amount - 12 digit
-        String companyIdentification = "0"+ request.getOriginatorAccountNumber(); // 8 digit routing number
-        String messageAuthenticationCode = "                   "; // Optional field
-        String reserved = "      "; // Blank field
-        String originatingDFIIdentification = String.valueOf(request.getOriginatorAccountNumber()).substring(0, 8); // 8 digit routing number
-        String batchNumber = String.format("%07d", batchHeadFooterCount); // 7 digit batch number 0 and increment by 1 for each batch
-
-        return String.format("%s%s%s%s%012d%012d%s%s%s%s%s", recordTypeCode, serviceClassCode, entryAddendaCount,
-                entryHash, Long.parseLong(totalDebitAmount), Long.parseLong(totalCreditAmount),
-                companyIdentification, messageAuthenticationCode, reserved, originatingDFIIdentification, batchNumber);
-    }
-
-
-    private String generateFileControlRecord(int batchCount, int entryCount,long entryHashe) {
-        // Generate File Control Record with provided batch and entry counts
-
-        String recordTypeCode = "9";
-        String batchCountString = String.format("%06d", batchCount); //number of batches
-        String blockCount = "000001"; // number of blocks in the file 10 records per block so 1 block
-        String entryAddendaCount = String.format("%08d", entryCount); // Example entry/addenda count
-        String entryHash = String.format("%010d", entryHashe); // Example entry hash
-        String totalDebitAmount = "000000000"; // Example total debit amount
-        String totalCreditAmount = "123456789"; // Example total credit amount
-        String reserved = "                                       "; // Reserved field with spaces (39 spaces) or constant 39 spaces blank
-        return String.format("%s%s%s%s%s%012d%012d%s", recordTypeCode, batchCountString,blockCount, entryAddendaCount,
-                entryHash, Long.parseLong(totalDebitAmount), Long.parseLong(totalCreditAmount), reserved);
+        LocalDate date = LocalDate.now();
+        int fileCreationDate = (date.getYear() % 100) * 10000 + date.getMonthValue() * 100 + date.getDayOfMonth(); // YYMMDD
+
+        // Only the creation date and file ID modifier change between files of the same originator
+        byte[] template = templates.get(new FileHeaderTemplateKey(request.getOriginatorRoutingNumber(),
+                        request.getOriginatorAccountNumber(), request.getOriginatorBDestination(), request.getOriginatorCName()),
+                () -> renderTemplate(w -> renderFileHeaderRecord(request, 0, 'A', w)));
+        writer.ascii(template, 0, 23)
+                .digits(fileCreationDate, 6)
+                .ascii(template, 29, 4)
+                .character(fileIdModifier)
+                .ascii(template, 34, 60)
+                .endRecord();
+    }
+
+    private void renderFileHeaderRecord(ACHPaymentRequest request, int fileCreationDate, char fileIdModifier, ACHRecordWriter writer) throws IOException {
+        writer.ascii(FILE_HEADER_PREFIX)
+                .character(' ').digits(request.getOriginatorRoutingNumber(), 9) // immediate destination, b + 9 digits
+                .character(' ').digits(request.getOriginatorAccountNumber(), 9) // immediate origin, b + 9 digits
+                .digits(fileCreationDate, 6)
+                .ascii(FILE_CREATION_TIME)
+                .character(fileIdModifier)
+                .ascii(FILE_HEADER_FORMAT)
+                .alpha(request.getOriginatorBDestination(), 23) // immediate destination name
+                .alpha(request.getOriginatorCName(), 23) // immediate origin name
+                .ascii(REFERENCE_CODE)
+                .endRecord();
+    }
+
+    void generateBatchHeaderRecord(ACHBatchKey batch, int batchNumber, ACHRecordWriter writer) throws IOException {
+        // Generate Batch Header Record for the batch key and batch number, only the batch number is not in the template
+        byte[] template = templates.get(new BatchTemplateKey(ACHRecordView.BATCH_HEADER, batch),
+                () -> renderTemplate(w -> renderBatchHeaderRecord(batch, 0, w)));
+        writer.ascii(template, 0, 87)
+                .digits(batchNumber, 7)
+                .endRecord();
+    }
+
+    private void renderBatchHeaderRecord(ACHBatchKey batch, int batchNumber, ACHRecordWriter writer) throws IOException {
+        // service class: 200 for mixed, 220 for credits only, 225 for debits only, 280 for prenote
+        writer.character('5')
+                .digits(batch.getServiceClassCode(), 3)
+                .alpha(batch.getOriginatorCName(), 16) // company name
+                .spaces(20) // company discretionary data, optional field
+                .character('1').digits(batch.getOriginatorAccountNumber(), 9) // company identification
+                .alpha(batch.getStandardEntryClassCode(), 3) // PPD, CCD, WEB, TEL, ... used for different types of transactions
+                .ascii(COMPANY_ENTRY_DESCRIPTION) // 10 character description
+                .ascii(COMPANY_DESCRIPTIVE_DATE)
+                .alpha(batch.getEffectiveEntryDate(), 6) // YYMMDD
+                .spaces(3) // julian settlement date filled by the bank
+                .character('1') // originator status code, 1 for single entry
+                .leadingDigits(batch.getOriginatorAccountNumber(), 8) // originating DFI identification
+                .digits(batchNumber, 7) // 7 digit batch number 0 and increment by 1 for each batch
+                .endRecord();
+    }
+
+    /**
+     * Reserves {@code count} trace sequences from the counter of the batch's originating DFI and returns the one
+     * before the first.
+     */
+    int allocateTraceSequences(ACHBatchKey key, int count) {
+        return traceSequences.allocate(ACHRecordWriter.leadingDigitsOf(key.getOriginatorAccountNumber(), 8), count);
+    }
+
+    int generateEntryDetailRecords(ACHBatch batch, int from, int to, int traceSequence, ACHRecordWriter writer) throws IOException {
+        // Generate Entry Detail Records for entries [from, to) of the batch, returns the last trace sequence used
+        // Fields are read straight from the batch's columns, the account and name are copied as pre-encoded bytes
+        ACHEntryStore entries = batch.getEntries();
+        ACHBatchKey key = batch.getKey();
+        byte[] transactionCode = key.isDebits() ? DEBIT_TRANSACTION_CODE : CREDIT_TRANSACTION_CODE;
+        byte[] text = entries.text();
+        int first = batch.getFirstEntry();
+        for (int i = first + from; i < first + to; i++) {
+            int textOffset = entries.textOffset(i);
+            writer.character('6')
+                    .ascii(transactionCode)
+                    .digits(entries.receivingDFI(i), 8) // receiving DFI identification, 8 digit routing number
+                    .character((char) entries.checkDigit(i)) // check digit
+                    .ascii(text, textOffset, ACHEntryStore.ACCOUNT_WIDTH) // 17 digit account number
+                    .digits(entries.amount(i), 10) // 10 digit amount in cents
+                    .ascii(INDIVIDUAL_IDENTIFICATION) // 15 digit identification number
+                    .ascii(text, textOffset + ACHEntryStore.ACCOUNT_WIDTH, ACHEntryStore.NAME_WIDTH) // 22 character name
+                    .ascii(ENTRY_DETAIL_SUFFIX)
+                    .leadingDigits(key.getOriginatorAccountNumber(), 8).digits(++traceSequence, 7) // 15 digit trace number
+                    .endRecord();
+        }
+        return traceSequence;
+    }
+
+    void generateEntryDetailRecord(ACHPaymentRequest request, ACHBatchKey batch, int traceSequence, ACHRecordWriter writer) throws IOException {
+        String receiverRoutingNumber = request.getReceiverRoutingNumber();
+        writer.character('6')
+                .ascii(batch.isDebits() ? DEBIT_TRANSACTION_CODE : CREDIT_TRANSACTION_CODE)
+                .alpha(receiverRoutingNumber, 8) // receiving DFI identification, 8 digit routing number
+                .alpha(receiverRoutingNumber, 8, 1) // check digit
+                .alpha(request.getReceiverAccountNumber(), 17) // 17 digit account number
+                .digits(ACHAmounts.toCents(request.getAmount()), 10) // 10 digit amount in cents
+                .ascii(INDIVIDUAL_IDENTIFICATION) // 15 digit identification number
+                .alpha(request.getReceiverName(), 22) // 22 character name
+                .ascii(ENTRY_DETAIL_SUFFIX)
+                .leadingDigits(batch.getOriginatorAccountNumber(), 8).digits(traceSequence, 7) // 15 digit trace number
+                .endRecord();
+    }
+
+    void generateBatchControlRecord(ACHBatch batch, int batchNumber, ACHRecordWriter writer) throws IOException {
+        // Generate Batch Control Record with the totals accumulated for the batch, written over the batch's template
+        ACHBatchKey key = batch.getKey();
+        byte[] template = templates.get(new BatchTemplateKey(ACHRecordView.BATCH_CONTROL, key),
+                () -> renderTemplate(w -> renderBatchControlRecord(ACHBatch.totalsOnly(key), 0, w)));
+        writer.ascii(template, 0, 4)
+                .digits(batch.getEntryCount(), 6) // entry/addenda count
+                .digits(batch.getEntryHash(), 10) // sum of the routing numbers of the entry detail records
+                .digits(batch.getTotalDebitAmount(), 12)
+                .digits(batch.getTotalCreditAmount(), 12)
+                .ascii(template, 44, 43)
+                .digits(batchNumber, 7)
+                .endRecord();
+    }
+
+    private void renderBatchControlRecord(ACHBatch batch, int batchNumber, ACHRecordWriter writer) throws IOException {
+        ACHBatchKey key = batch.getKey();
+        writer.character('8')
+                .digits(key.getServiceClassCode(), 3)
+                .digits(batch.getEntryCount(), 6) // entry/addenda count
+                .digits(batch.getEntryHash(), 10) // sum of the routing numbers of the entry detail records
+                .digits(batch.getTotalDebitAmount(), 12)
+                .digits(batch.getTotalCreditAmount(), 12)
+                .character('0').digits(key.getOriginatorAccountNumber(), 9) // company identification
+                .spaces(19) // message authentication code, optional field
+                .spaces(6) // reserved
+                .leadingDigits(key.getOriginatorAccountNumber(), 8) // originating DFI identification
+                .digits(batchNumber, 7) // 7 digit batch number 0 and increment by 1 for each batch
+                .endRecord();
+    }
+
+    void generateFileControlRecord(ACHFileTotals totals, ACHRecordWriter writer) throws IOException {
+        // Generate File Control Record with the totals of all batches, followed by the padding of the last block
+        long blockCount = totals.getBlockCount();
+        long padding = blockCount * ACHRecordWriter.BLOCKING_FACTOR - totals.getRecordCount();
+        writer.character('9')
+                .digits(totals.getBatchCount(), 6) // number of batches
+                .digits(blockCount, 6) // number of blocks in the file, 10 records per block
+                .digits(totals.getEntryCount(), 8) // entry/addenda count
+                .digits(totals.getEntryHash(), 10)
+                .digits(totals.getTotalDebitAmount(), 12)
+                .digits(totals.getTotalCreditAmount(), 12)
+                .spaces(39) // reserved
+                .endRecord(padding > 0); // the last line of the file has no line feed
+        for (long i = padding; i > 0; i--) {
+            writer.fill('9', ACHRecordWriter.RECORD_SIZE).endRecord(i > 1); // 94 characters per line
+        }
     }
 
+    private static byte[] ascii(String value) {
+        return value.getBytes(StandardCharsets.US_ASCII);
+    }
 
+    // Template cache keys, a batch key already holds every fixed field of its batch header and control records
+    private record FileHeaderTemplateKey(long routingNumber, long accountNumber, String destination, String companyName) {
+    }
 
+    private record BatchTemplateKey(char recordType, ACHBatchKey batch) {
+    }
+
+    private static byte[] renderTemplate(RecordSource source) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(ACHRecordWriter.LINE_SIZE);
+        try {
+            ACHRecordWriter writer = new ACHRecordWriter(out, 1);
+            source.writeTo(writer);
+            writer.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e); // cannot happen for an in-memory stream
+        }
+        return Arrays.copyOf(out.toByteArray(), ACHRecordWriter.RECORD_SIZE); // without the line feed
+    }
 
     public void writeACHFile(List<ACHPaymentRequest> paymentRequests, String filePath) throws IOException {
-        // Generate ACH file content
-        String achFileContent = generateACHFile(paymentRequests);
+        // Generate ACH file content straight into the file, nothing is held in memory
+        writeAtomically(filePath, writer -> generateACHFile(paymentRequests, writer));
+
+        log.info("ACH file written successfully to: {}", filePath);
+    }
+
+    @Override
+    public void writeACHFile(Iterator<ACHPaymentRequest> paymentRequests, String filePath) throws IOException {
+        writeAtomically(filePath, writer -> generateACHFile(paymentRequests, writer));
+
+        log.info("ACH file written successfully to: {}", filePath);
+    }
+
+    @Override
+    public List<String> writeACHFiles(List<ACHPaymentRequest> paymentRequests, String outputDirectory, boolean gzip) throws IOException {
+        if (paymentRequests.isEmpty()) {
+            throw new IllegalArgumentException("At least one ACH payment request is required");
+        }
+        // Spread the batches over as many files as the bank's limits require, each with its own file ID modifier
+        List<List<ACHBatch>> files = ACHFileSplitter.split(ACHBatcher.group(paymentRequests), maxEntriesPerFile,
+                maxFileBytes / ACHRecordWriter.LINE_SIZE);
+        if (files.size() > ACHFileIdModifiers.MODIFIERS.length()) {
+            throw new IllegalArgumentException("ACH run needs " + files.size() + " files but only "
+                    + ACHFileIdModifiers.MODIFIERS.length() + " file ID modifiers are available");
+        }
+        String modifiers = fileIdModifiers.next(files.size());
+        Path directory = Paths.get(outputDirectory);
+        Files.createDirectories(directory);
+        String baseName = newFileName("ach");
+
+        // Files are rendered and written concurrently on the fork/join pool, one task per file
+        ACHPaymentRequest headerRequest = paymentRequests.get(0);
+        List<ForkJoinTask<Path>> tasks = new ArrayList<>(files.size());
+        for (int i = 0; i < files.size(); i++) {
+            List<ACHBatch> batches = files.get(i);
+            char fileIdModifier = modifiers.charAt(i);
+            int entryCount = batches.stream().mapToInt(ACHBatch::getEntryCount).sum();
+            Path path = directory.resolve(baseName + "-" + fileIdModifier + (gzip ? ".txt.gz" : ".txt"));
+            tasks.add(ForkJoinTask.adapt(() -> {
+                writeAtomically(path, gzip, writer -> generateACHFile(headerRequest, fileIdModifier, batches, entryCount, writer));
+                return path;
+            }));
+        }
+        ForkJoinTask.invokeAll(tasks);
+
+        List<String> filePaths = new ArrayList<>(tasks.size());
+        IOException failure = null;
+        for (ForkJoinTask<Path> task : tasks) {
+            if (task.isCompletedNormally()) {
+                filePaths.add(task.join().toString());
+            } else if (failure == null) {
+                Throwable cause = task.getException();
+                if (cause != null && !(cause instanceof IOException) && cause.getCause() instanceof IOException) {
+                    cause = cause.getCause(); // adapt() wraps checked exceptions
+                }
+                failure = cause instanceof IOException ? (IOException) cause : new IOException("Failed to write ACH file", cause);
+            }
+        }
+        if (failure != null) {
+            // A partial run must not be transmitted, so remove the files that were written
+            for (String filePath : filePaths) {
+                Files.deleteIfExists(Paths.get(filePath));
+            }
+            throw failure;
+        }
+        log.info("ACH run written as {} files to: {}", filePaths.size(), directory);
+        return filePaths;
+    }
+
+    private interface RecordSource {
+        void writeTo(ACHRecordWriter writer) throws IOException;
+    }
+
+    /**
+     * A file name no earlier run has used, {@code prefix-yyyyMMdd-xxxxxxxx}, so a generated file never replaces another
+     * one and its trace numbers stay in the trace index.
+     */
+    public static String newFileName(String prefix) {
+        return prefix + "-" + LocalDate.now().format(DateTimeFormatter.BASIC_ISO_DATE) + "-" + UUID.randomUUID().toString().substring(0, 8);
+    }
 
-        // Write ACH file content to a text file
-        Path path = Paths.get(filePath);
-        Files.write(path, achFileContent.getBytes());
+    private void writeAtomically(String filePath, RecordSource source) throws IOException {
+        writeAtomically(Paths.get(filePath), false, source);
+    }
 
-        System.out.println("ACH file written successfully to: " + filePath);
+    /**
+     * Writes into a uniquely named temp file next to {@code filePath}, forces it to disk and renames it into place, so
+     * readers never see a partial file and concurrent writers of the same path cannot interleave. With {@code gzip} the
+     * records are compressed as they are written.
+     */
+    private void writeAtomically(Path filePath, boolean gzip, RecordSource source) throws IOException {
+        Path target = filePath.toAbsolutePath();
+        Path temp = Files.createTempFile(target.getParent(), target.getFileName().toString(), ".tmp");
+        try {
+            long syncStarted;
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+                if (gzip) {
+                    // finish() completes the gzip trailer without closing the channel before it is forced
+                    GZIPOutputStream out = new GZIPOutputStream(Channels.newOutputStream(channel), GZIP_BUFFER_SIZE);
+                    ACHRecordWriter writer = new ACHRecordWriter(out);
+                    source.writeTo(writer);
+                    writer.flush();
+                    out.finish();
+                } else {
+                    ACHRecordWriter writer = new ACHRecordWriter(channel);
+                    source.writeTo(writer);
+                    writer.flush();
+                }
+                syncStarted = System.nanoTime();
+                channel.force(true);
+            }
+            Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            metrics.fileSync(System.nanoTime() - syncStarted);
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(temp);
+            throw e;
+        }
+        if (!gzip) {
+            indexTraceNumbers(target);
+        }
+    }
+
+    /**
+     * Adds a generated file to the trace number index. The file itself is complete at this point, so a failure is
+     * logged rather than failing the generation and provoking a retry that would send the payments again.
+     */
+    void indexTraceNumbers(Path file) {
+        if (traceIndex == null) {
+            return;
+        }
+        try {
+            traceIndex.index(file);
+        } catch (IOException | RuntimeException e) {
+            log.warn("Failed to index trace numbers of {}", file, e);
+        }
+    }
+
+    @Override
+    public ACHFileReport verifyACHFile(String filePath) throws IOException {
+        return ACHFileVerifier.verify(Paths.get(filePath));
     }
 
     @Override
     public ResponseEntity<String> validateACHPaymentRequest(List<ACHPaymentRequest> achPaymentRequest) {
-        if(achPaymentRequest.get(0).getOriginatorCName().isEmpty() || achPaymentRequest.get(0).getReceiverName().isEmpty() || achPaymentRequest.get(0).getReceiverRoutingNumber().isEmpty() || achPaymentRequest.get(0).getReceiverAccountNumber().isEmpty() || achPaymentRequest.get(0).getOriginatorBDestination().isEmpty() || achPaymentRequest.get(0).getOriginatorRoutingNumber() == 0 || achPaymentRequest.get(0).getOriginatorAccountNumber() == 0 || achPaymentRequest.get(0).getAmount() == 0 || achPaymentRequest.get(0).getTransactionType().isEmpty()){
+        if (!validatePaymentRequests(achPaymentRequest, ACHPaymentValidator.Mode.FAIL_FAST).isValid()) {
             return ResponseEntity.badRequest().body("Invalid ACH Payment Request");
         }
         return ResponseEntity.ok("Valid ACH Payment Request");
     }
 
     @Override
-    public void uploadFileToServer(String filePath) throws IOException {
-        RestTemplate restTemplate = new RestTemplate();
-
-        HttpHeaders headers = new HttpHeaders();
-        headers.setContentType(MediaType.MULTIPART_FORM_DATA); // Set the content type to multipart/form-data
-
-        MultiValueMap<String, Object> body = new LinkedMultiValueMap<>(); //linked multi value map to store the file
-        body.add("file", Files.readAllBytes(Paths.get(filePath))); // Add the file to the body
-
-        HttpEntity<MultiValueMap<String, Object>> requestEntity = new HttpEntity<>(body, headers);
+    public ACHValidationReport validatePaymentRequests(List<ACHPaymentRequest> paymentRequests, ACHPaymentValidator.Mode mode) {
+        long started = System.nanoTime();
+        ACHValidationReport report = ACHPaymentValidator.validate(paymentRequests, mode);
+        metrics.validation(System.nanoTime() - started);
+        return report;
+    }
 
-        String serverUrl = "http://dummybank.com/api/upload"; //
+    @Override
+    public void uploadFileToServer(String filePath) throws IOException {
+        // Stream the file to the bank in resumable chunks over the shared HTTP client
+        fileUploader.upload(Paths.get(filePath));
+    }
 
-        restTemplate.postForEntity(serverUrl, requestEntity, String.class);
+    @Override
+    public List<ACHUploadResult> uploadFilesToServer(List<String> filePaths) throws IOException {
+        return fileUploader.uploadAll(filePaths.stream().map(Paths::get).toList());
     }
 
 
@@ -0,0 +1,311 @@
+package com.example.achpaymentpoc.trace;
+
+import com.example.achpaymentpoc.nacha.ACHFileReader;
+import com.example.achpaymentpoc.nacha.ACHRecordView;
+import com.example.achpaymentpoc.nacha.ACHRecordWriter;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Persistent trace number index of generated files.
+ * <p>
+ * Every generated file gets a {@code .trc} file next to it: a table of (trace number, record offset, batch number)
+ * sorted by trace number. The tables stay memory-mapped and are listed in a catalog, so after a restart they are mapped
+ * again instead of rebuilt. The catalog is rewritten on startup with one line per live table, so it does not grow with
+ * restarts or with files indexed again. A lookup checks each table's trace range from the newest file back and binary searches
+ * the tables that can hold the trace number, then reads the 94 byte record straight from the generated file. The table
+ * of a generated file that has since been deleted, such as an evicted idempotent result, is skipped and removed.
+ * <p>
+ * Trace sequences come from {@link ACHTraceSequences}, one counter per originating DFI, so a trace number only
+ * appears again once its originator's 9,999,999 sequences have wrapped; the most recently generated one is returned.
+ */
+@Slf4j
+@Component
+public class ACHTraceIndex {
+
+    public static final String SUFFIX = ".trc";
+    private static final long MAGIC = 0x4143485452414345L; // "ACHTRACE"
+    private static final int HEADER_SIZE = 32; // magic, count, line size, min trace, max trace
+    private static final int ENTRY_SIZE = 20; // trace number, offset, batch number
+    private static final long TRACE_SEQUENCE_MODULUS = 10000000L; // the trace number ends in a 7 digit sequence
+
+    private final Path catalog;
+    private final List<Segment> segments = new CopyOnWriteArrayList<>(); // oldest first
+
+    public ACHTraceIndex(@Value("${ach.trace-index.catalog:ach-index/traces.catalog}") String catalog) {
+        this.catalog = Paths.get(catalog).toAbsolutePath();
+    }
+
+    private record Segment(Path indexFile, Path dataFile, MappedByteBuffer table, int count, int lineSize,
+                           long minTrace, long maxTrace) {
+    }
+
+    @PostConstruct
+    public synchronized void open() throws IOException {
+        Files.createDirectories(catalog.getParent());
+        if (!Files.exists(catalog)) {
+            return;
+        }
+        Set<Path> indexFiles = new LinkedHashSet<>();
+        for (String line : Files.readAllLines(catalog, StandardCharsets.UTF_8)) {
+            if (!line.isBlank()) {
+                Path indexFile = Paths.get(line);
+                indexFiles.remove(indexFile); // a regenerated file moves to the end
+                indexFiles.add(indexFile);
+            }
+        }
+        for (Path indexFile : indexFiles) {
+            if (Files.exists(indexFile)) {
+                Segment segment = map(indexFile);
+                if (Files.exists(segment.dataFile())) {
+                    segments.add(segment);
+                } else {
+                    Files.deleteIfExists(indexFile); // the generated file was deleted while the index was closed
+                }
+            }
+        }
+        writeCatalog();
+        log.info("Opened ACH trace index with {} files", segments.size());
+    }
+
+    /**
+     * Builds the trace number table of a generated file and adds it to the index, replacing an earlier table of a file
+     * with the same path. Generated files get unique names, so a table is only replaced when the same file is indexed
+     * again; overwriting a generated file loses the trace numbers it held.
+     */
+    public synchronized void index(Path dataFile) throws IOException {
+        Path file = dataFile.toAbsolutePath();
+        Path indexFile = file.resolveSibling(file.getFileName() + SUFFIX);
+        writeTable(file, indexFile);
+        boolean replaced = segments.removeIf(segment -> segment.indexFile().equals(indexFile));
+        segments.add(map(indexFile));
+        if (replaced) {
+            writeCatalog(); // the table moves to the end instead of being listed twice
+        } else {
+            Files.writeString(catalog, indexFile + "\n", StandardCharsets.UTF_8, StandardOpenOption.CREATE,
+                    StandardOpenOption.APPEND, StandardOpenOption.SYNC);
+        }
+    }
+
+    /**
+     * Rewrites the catalog with the live tables, oldest first, through a temp file renamed into place.
+     */
+    private void writeCatalog() throws IOException {
+        StringBuilder lines = new StringBuilder();
+        for (Segment segment : segments) {
+            lines.append(segment.indexFile()).append('\n');
+        }
+        Path temp = Files.createTempFile(catalog.getParent(), catalog.getFileName().toString(), ".tmp");
+        try {
+            Files.writeString(temp, lines, StandardCharsets.UTF_8, StandardOpenOption.WRITE, StandardOpenOption.SYNC);
+            Files.move(temp, catalog, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(temp);
+            throw e;
+        }
+    }
+
+    public Optional<ACHTraceRecord> find(long traceNumber) throws IOException {
+        for (int i = segments.size() - 1; i >= 0; i--) {
+            Segment segment = segments.get(i);
+            if (traceNumber < segment.minTrace() || traceNumber > segment.maxTrace()) {
+                continue;
+            }
+            int entry = search(segment, traceNumber);
+            if (entry >= 0) {
+                try {
+                    return Optional.of(read(segment, entry));
+                } catch (NoSuchFileException e) {
+                    drop(segment); // the generated file was deleted, an older file may still hold the trace number
+                }
+            }
+        }
+        return Optional.empty();
+    }
+
+    /**
+     * Removes the table of a generated file that no longer exists, so lookups stop reading it.
+     */
+    private synchronized void drop(Segment segment) throws IOException {
+        if (segments.remove(segment)) {
+            Files.deleteIfExists(segment.indexFile());
+            log.info("Removed ACH trace index of deleted file {}", segment.dataFile());
+        }
+    }
+
+    /**
+     * The highest indexed trace number of each originating DFI, keyed on the 8 digit DFI identification.
+     */
+    public Map<Long, Long> highestTraceNumbers() {
+        Map<Long, Long> highest = new HashMap<>();
+        for (Segment segment : segments) {
+            MappedByteBuffer table = segment.table();
+            for (int entry = 0; entry < segment.count(); entry++) {
+                long traceNumber = table.getLong(HEADER_SIZE + entry * ENTRY_SIZE);
+                highest.merge(traceNumber / TRACE_SEQUENCE_MODULUS, traceNumber, Math::max);
+            }
+        }
+        return highest;
+    }
+
+    public int fileCount() {
+        return segments.size();
+    }
+
+    private static int search(Segment segment, long traceNumber) {
+        MappedByteBuffer table = segment.table();
+        int low = 0, high = segment.count() - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            long trace = table.getLong(HEADER_SIZE + mid * ENTRY_SIZE);
+            if (trace < traceNumber) {
+                low = mid + 1;
+            } else if (trace > traceNumber) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+
+    private static ACHTraceRecord read(Segment segment, int entry) throws IOException {
+        int position = HEADER_SIZE + entry * ENTRY_SIZE;
+        long traceNumber = segment.table().getLong(position);
+        long offset = segment.table().getLong(position + 8);
+        int batchNumber = segment.table().getInt(position + 16);
+        ByteBuffer record = ByteBuffer.allocate(ACHRecordWriter.RECORD_SIZE);
+        try (FileChannel channel = FileChannel.open(segment.dataFile(), StandardOpenOption.READ)) {
+            while (record.hasRemaining() && channel.read(record, offset + record.position()) >= 0) {
+                // positional reads until the record is complete
+            }
+        }
+        return new ACHTraceRecord(traceNumber, segment.dataFile().toString(), batchNumber,
+                offset / segment.lineSize() + 1, offset, new String(record.array(), 0, record.position(), StandardCharsets.US_ASCII));
+    }
+
+    private static Segment map(Path indexFile) throws IOException {
+        try (FileChannel channel = FileChannel.open(indexFile, StandardOpenOption.READ)) {
+            MappedByteBuffer table = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()); // stays valid after close
+            if (channel.size() < HEADER_SIZE || table.getLong(0) != MAGIC) {
+                throw new IOException("Not an ACH trace index: " + indexFile);
+            }
+            String name = indexFile.getFileName().toString();
+            Path dataFile = indexFile.resolveSibling(name.substring(0, name.length() - SUFFIX.length()));
+            return new Segment(indexFile, dataFile, table, table.getInt(8), table.getInt(12), table.getLong(16), table.getLong(24));
+        }
+    }
+
+    /**
+     * Reads the entry detail records of {@code dataFile} and writes them sorted by trace number, through a temp file
+     * renamed into place.
+     */
+    private static void writeTable(Path dataFile, Path indexFile) throws IOException {
+        long[] traces = new long[1024];
+        long[] offsets = new long[1024];
+        int[] batchNumbers = new int[1024];
+        int count = 0;
+        int lineSize;
+        try (ACHFileReader reader = ACHFileReader.open(dataFile)) {
+            lineSize = reader.lineSize();
+            int batchNumber = 0;
+            ACHRecordView record;
+            while ((record = reader.next()) != null) {
+                char type = record.recordType();
+                if (type == ACHRecordView.BATCH_HEADER) {
+                    batchNumber = (int) record.batchNumber();
+                } else if (type == ACHRecordView.ENTRY_DETAIL) {
+                    if (count == traces.length) {
+                        traces = Arrays.copyOf(traces, count * 2);
+                        offsets = Arrays.copyOf(offsets, count * 2);
+                        batchNumbers = Arrays.copyOf(batchNumbers, count * 2);
+                    }
+                    traces[count] = record.traceNumber();
+                    offsets[count] = reader.recordOffset();
+                    batchNumbers[count] = batchNumber;
+                    count++;
+                }
+            }
+        }
+        sort(traces, offsets, batchNumbers, count);
+
+        Path temp = Files.createTempFile(indexFile.getParent(), indexFile.getFileName().toString(), ".tmp");
+        try {
+            long size = HEADER_SIZE + (long) count * ENTRY_SIZE;
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                MappedByteBuffer table = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+                table.putLong(MAGIC).putInt(count).putInt(lineSize)
+                        .putLong(count == 0 ? Long.MAX_VALUE : traces[0])
+                        .putLong(count == 0 ? Long.MIN_VALUE : traces[count - 1]);
+                for (int i = 0; i < count; i++) {
+                    table.putLong(traces[i]).putLong(offsets[i]).putInt(batchNumbers[i]);
+                }
+                table.force();
+            }
+            Files.move(temp, indexFile, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(temp);
+            throw e;
+        }
+    }
+
+    /**
+     * Stable bottom-up merge sort of the three columns by trace number. Entries come in one increasing run per batch,
+     * so most merges are cheap.
+     */
+    static void sort(long[] traces, long[] offsets, int[] batchNumbers, int count) {
+        long[] traceBuffer = new long[count];
+        long[] offsetBuffer = new long[count];
+        int[] batchBuffer = new int[count];
+        for (int width = 1; width < count; width *= 2) {
+            for (int low = 0; low < count - width; low += 2 * width) {
+                int mid = low + width, high = Math.min(low + 2 * width, count);
+                if (traces[mid - 1] <= traces[mid]) {
+                    continue; // already in order
+                }
+                int i = low, j = mid, k = low;
+                while (i < mid && j < high) {
+                    int from = traces[j] < traces[i] ? j++ : i++;
+                    traceBuffer[k] = traces[from];
+                    offsetBuffer[k] = offsets[from];
+                    batchBuffer[k++] = batchNumbers[from];
+                }
+                while (i < mid) {
+                    traceBuffer[k] = traces[i];
+                    offsetBuffer[k] = offsets[i];
+                    batchBuffer[k++] = batchNumbers[i++];
+                }
+                while (j < high) {
+                    traceBuffer[k] = traces[j];
+                    offsetBuffer[k] = offsets[j];
+                    batchBuffer[k++] = batchNumbers[j++];
+                }
+                System.arraycopy(traceBuffer, low, traces, low, high - low);
+                System.arraycopy(offsetBuffer, low, offsets, low, high - low);
+                System.arraycopy(batchBuffer, low, batchNumbers, low, high - low);
+            }
+        }
+    }
+}
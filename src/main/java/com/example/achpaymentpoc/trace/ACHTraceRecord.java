@@ -0,0 +1,21 @@
+package com.example.achpaymentpoc.trace;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Where an entry detail record with a given trace number was generated, and the record itself.
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class ACHTraceRecord {
+
+    private long traceNumber;
+    private String filePath;
+    private long batchNumber;
+    private long lineNumber;
+    private long offset;
+    private String record; // the 94 byte entry detail record
+}
@@ -0,0 +1,128 @@
+package com.example.achpaymentpoc.trace;
+
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Allocates the 7 digit sequence numbers of trace numbers, one counter per originating DFI, so no two entries of the
+ * same originator share a trace number across files, runs and restarts.
+ * <p>
+ * Counters are persisted as the highest sequence reserved so far, a block of {@link #RESERVATION} ahead of the last
+ * one handed out, so the file is only rewritten once per block. A restart resumes after the reservation and leaves
+ * the rest of the block unused. Without a counter file, counters start from the highest trace numbers in the
+ * {@link ACHTraceIndex}. A counter that runs out of its 9,999,999 sequences starts over at 1 with a warning.
+ */
+@Slf4j
+@Component
+public class ACHTraceSequences {
+
+    public static final int MAX_SEQUENCE = 9999999; // 7 digit sequence of the trace number
+    static final int RESERVATION = 10000;
+    private static final long SEQUENCE_MODULUS = 10000000L;
+
+    private final Path file; // null keeps the counters in memory only
+    private final ACHTraceIndex traceIndex;
+    private final Map<Long, Counter> counters = new HashMap<>();
+
+    private static class Counter {
+        int last; // last sequence handed out
+        int reserved; // highest sequence persisted as reserved
+    }
+
+    /**
+     * Counters kept in memory only, starting at 1, for generation outside the application.
+     */
+    public ACHTraceSequences() {
+        this(null, null);
+    }
+
+    @Autowired
+    public ACHTraceSequences(@Value("${ach.trace-sequences.file:ach-index/trace-sequences}") String file,
+                             ACHTraceIndex traceIndex) {
+        this.file = file == null ? null : Paths.get(file).toAbsolutePath();
+        this.traceIndex = traceIndex;
+    }
+
+    @PostConstruct
+    public synchronized void open() throws IOException {
+        if (file == null) {
+            return;
+        }
+        Files.createDirectories(file.getParent());
+        if (Files.exists(file)) {
+            for (String line : Files.readAllLines(file, StandardCharsets.US_ASCII)) {
+                if (!line.isBlank()) {
+                    String[] fields = line.trim().split(" ");
+                    resume(Long.parseLong(fields[0]), Integer.parseInt(fields[1]));
+                }
+            }
+        } else if (traceIndex != null) {
+            traceIndex.highestTraceNumbers().forEach((odfi, traceNumber) -> resume(odfi, (int) (traceNumber % SEQUENCE_MODULUS)));
+            persist();
+        }
+        log.info("Opened ACH trace sequences of {} originating DFIs", counters.size());
+    }
+
+    /**
+     * Reserves {@code count} consecutive sequences for {@code odfi}, the 8 digit originating DFI identification that
+     * leads the trace number, and returns the one before the first, so entries are numbered {@code first + 1} to
+     * {@code first + count}.
+     */
+    public synchronized int allocate(long odfi, int count) {
+        if (count < 0 || count > MAX_SEQUENCE) {
+            throw new IllegalArgumentException("Cannot allocate " + count + " trace sequences");
+        }
+        Counter counter = counters.computeIfAbsent(odfi, key -> new Counter());
+        if (counter.last > MAX_SEQUENCE - count) {
+            log.warn("Trace sequences of originating DFI {} are used up, starting over at 1", odfi);
+            counter.last = 0;
+            counter.reserved = 0;
+        }
+        int first = counter.last;
+        counter.last += count;
+        if (counter.last > counter.reserved) {
+            counter.reserved = (int) Math.min(MAX_SEQUENCE, (long) counter.last + RESERVATION);
+            if (file != null) {
+                try {
+                    persist();
+                } catch (IOException e) {
+                    throw new UncheckedIOException("Failed to persist trace sequences to " + file, e);
+                }
+            }
+        }
+        return first;
+    }
+
+    private void resume(long odfi, int sequence) {
+        Counter counter = counters.computeIfAbsent(odfi, key -> new Counter());
+        counter.last = Math.max(counter.last, sequence);
+        counter.reserved = counter.last;
+    }
+
+    private void persist() throws IOException {
+        StringBuilder lines = new StringBuilder(counters.size() * 18);
+        counters.forEach((odfi, counter) -> lines.append(odfi).append(' ').append(counter.reserved).append('\n'));
+        Path temp = Files.createTempFile(file.getParent(), file.getFileName().toString(), ".tmp");
+        try {
+            Files.writeString(temp, lines, StandardCharsets.US_ASCII, StandardOpenOption.WRITE, StandardOpenOption.SYNC);
+            Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(temp);
+            throw e;
+        }
+    }
+}
@@ -0,0 +1,198 @@
+package com.example.achpaymentpoc.upload;
+
+import com.example.achpaymentpoc.metrics.ACHMetrics;
+import jakarta.annotation.PreDestroy;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Uploads ACH files to the bank in chunks over one shared, keep-alive {@link HttpClient}.
+ * <p>
+ * Each chunk is read from disk into a reusable buffer and sent as {@code PUT {endpoint}/{uploadId}} with a
+ * {@code Content-Range} header. The server acknowledges how far it has persisted through an {@code Upload-Offset}
+ * response header. When a chunk fails, the uploader asks for that offset with {@code HEAD {endpoint}/{uploadId}} and
+ * resumes from there, so a retry never resends acknowledged bytes.
+ */
+@Service
+public class ACHFileUploader {
+
+    static final String UPLOAD_OFFSET = "Upload-Offset";
+    static final String UPLOAD_FILE_NAME = "Upload-File-Name";
+
+    private final ACHUploadProperties properties;
+    private final ACHMetrics metrics;
+    private final HttpClient httpClient;
+    private final ExecutorService uploadExecutor; // its size is the concurrency limit
+
+    public ACHFileUploader(ACHUploadProperties properties, ACHMetrics metrics) {
+        this.properties = properties;
+        this.metrics = metrics;
+        this.httpClient = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(properties.getConnectTimeout())
+                .build();
+        this.uploadExecutor = Executors.newFixedThreadPool(properties.getMaxConcurrentUploads());
+    }
+
+    public ACHUploadResult upload(Path file) throws IOException {
+        String uploadId = UUID.randomUUID().toString();
+        URI uri = URI.create(properties.getEndpoint() + "/" + uploadId);
+        long started = System.nanoTime();
+        int requests = 0;
+        int retries = 0;
+        long totalLatency = 0;
+        long maxLatency = 0;
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            ByteBuffer chunk = ByteBuffer.allocate((int) Math.min(properties.getChunkSize(), Math.max(1, size)));
+            long offset = 0;
+            do {
+                int length = readChunk(channel, chunk, offset);
+                long requestStarted = System.nanoTime();
+                requests++;
+                try {
+                    offset = sendChunk(uri, file, chunk.array(), length, offset, size);
+                } catch (InterruptedIOException e) {
+                    throw e;
+                } catch (IOException e) {
+                    if (++retries > properties.getMaxRetries()) {
+                        throw new IOException("Upload of " + file + " failed after " + properties.getMaxRetries() + " retries", e);
+                    }
+                    backoff(retries);
+                    offset = acknowledgedOffset(uri, offset);
+                } finally {
+                    long latency = System.nanoTime() - requestStarted;
+                    metrics.uploadRequest(latency);
+                    totalLatency += latency;
+                    maxLatency = Math.max(maxLatency, latency);
+                }
+            } while (offset < size);
+
+            long duration = System.nanoTime() - started;
+            metrics.upload(size, retries, duration);
+            long durationMillis = duration / 1_000_000;
+            return new ACHUploadResult(uploadId, file.toString(), size, requests, retries, durationMillis,
+                    totalLatency / 1e6 / requests, maxLatency / 1e6);
+        }
+    }
+
+    /**
+     * Uploads several files at once, at most {@code ach.upload.max-concurrent-uploads} at a time.
+     * Results are returned in the order of {@code files}.
+     */
+    public List<ACHUploadResult> uploadAll(List<Path> files) throws IOException {
+        List<Future<ACHUploadResult>> futures = new ArrayList<>(files.size());
+        for (Path file : files) {
+            futures.add(uploadExecutor.submit(() -> upload(file)));
+        }
+        List<ACHUploadResult> results = new ArrayList<>(files.size());
+        try {
+            for (Future<ACHUploadResult> future : futures) {
+                results.add(future.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            futures.forEach(future -> future.cancel(true));
+            throw new InterruptedIOException("Interrupted while uploading ACH files");
+        } catch (ExecutionException e) {
+            futures.forEach(future -> future.cancel(true));
+            throw e.getCause() instanceof IOException io ? io : new IOException(e.getCause());
+        }
+        return results;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        uploadExecutor.shutdownNow();
+    }
+
+    private int readChunk(FileChannel channel, ByteBuffer chunk, long offset) throws IOException {
+        chunk.clear();
+        long remaining = channel.size() - offset;
+        if (remaining < chunk.capacity()) {
+            chunk.limit((int) remaining);
+        }
+        while (chunk.hasRemaining()) {
+            if (channel.read(chunk, offset + chunk.position()) < 0) {
+                throw new IOException("File shrank while uploading at offset " + (offset + chunk.position()));
+            }
+        }
+        return chunk.position();
+    }
+
+    /**
+     * Sends one chunk and returns the offset the server acknowledged.
+     */
+    private long sendChunk(URI uri, Path file, byte[] chunk, int length, long offset, long size) throws IOException {
+        String contentRange = length == 0
+                ? "bytes */" + size
+                : "bytes " + offset + "-" + (offset + length - 1) + "/" + size;
+        HttpRequest request = HttpRequest.newBuilder(uri)
+                .timeout(properties.getRequestTimeout())
+                .header("Content-Type", "application/octet-stream")
+                .header("Content-Range", contentRange)
+                .header(UPLOAD_FILE_NAME, String.valueOf(file.getFileName()))
+                .PUT(HttpRequest.BodyPublishers.ofByteArray(chunk, 0, length))
+                .build();
+        HttpResponse<Void> response = send(request);
+        if (response.statusCode() / 100 != 2) {
+            throw new IOException("Bank rejected chunk at offset " + offset + " with status " + response.statusCode());
+        }
+        return response.headers().firstValueAsLong(UPLOAD_OFFSET).orElse(offset + length);
+    }
+
+    /**
+     * Asks the server how many bytes it has persisted, falling back to {@code fallback} if it cannot tell.
+     */
+    private long acknowledgedOffset(URI uri, long fallback) {
+        HttpRequest request = HttpRequest.newBuilder(uri)
+                .timeout(properties.getRequestTimeout())
+                .method("HEAD", HttpRequest.BodyPublishers.noBody())
+                .build();
+        try {
+            HttpResponse<Void> response = send(request);
+            if (response.statusCode() / 100 == 2) {
+                return response.headers().firstValueAsLong(UPLOAD_OFFSET).orElse(fallback);
+            }
+        } catch (IOException e) {
+            // the next chunk attempt will fail and retry again
+        }
+        return fallback;
+    }
+
+    private HttpResponse<Void> send(HttpRequest request) throws IOException {
+        try {
+            return httpClient.send(request, HttpResponse.BodyHandlers.discarding());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while uploading to " + request.uri());
+        }
+    }
+
+    private void backoff(int attempt) throws InterruptedIOException {
+        try {
+            Thread.sleep(properties.getRetryBackoff().toMillis() << Math.min(attempt - 1, 10));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting to retry upload");
+        }
+    }
+}
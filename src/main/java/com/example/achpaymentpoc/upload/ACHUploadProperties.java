@@ -0,0 +1,24 @@
+package com.example.achpaymentpoc.upload;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+/**
+ * Settings of the bank upload client, bound from {@code ach.upload.*}.
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "ach.upload")
+public class ACHUploadProperties {
+
+    private String endpoint = "http://dummybank.com/api/upload"; // uploads are sent to {endpoint}/{uploadId}
+    private int chunkSize = 4 * 1024 * 1024; // bytes read from disk and sent per request
+    private int maxConcurrentUploads = 4;
+    private int maxRetries = 5; // per upload, each retry resumes from the last acknowledged offset
+    private Duration retryBackoff = Duration.ofMillis(500); // doubled after every failed attempt
+    private Duration connectTimeout = Duration.ofSeconds(10);
+    private Duration requestTimeout = Duration.ofMinutes(2);
+}
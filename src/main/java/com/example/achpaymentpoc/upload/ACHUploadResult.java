@@ -0,0 +1,27 @@
+package com.example.achpaymentpoc.upload;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Outcome of one file upload with its throughput and per-request latency.
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class ACHUploadResult {
+
+    private String uploadId;
+    private String filePath;
+    private long bytes;
+    private int requests; // chunk requests sent, including retried ones
+    private int retries;
+    private long durationMillis;
+    private double averageRequestLatencyMillis;
+    private double maxRequestLatencyMillis;
+
+    public double getThroughputBytesPerSecond() {
+        return bytes * 1000.0 / Math.max(1, durationMillis);
+    }
+}
@@ -0,0 +1,241 @@
+package com.example.achpaymentpoc.validation;
+
+import com.example.achpaymentpoc.batch.ACHBatchKey;
+import com.example.achpaymentpoc.dto.ACHPaymentRequest;
+import com.example.achpaymentpoc.nacha.ACHAmounts;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+
+/**
+ * Validates every payment request against the NACHA field rules the generator relies on: required fields, field
+ * lengths, numeric content and the ABA routing number check digit.
+ * <p>
+ * Lists larger than one chunk are validated in parallel, one chunk per task. Checks are plain character loops, so a
+ * valid request allocates nothing.
+ */
+public final class ACHPaymentValidator {
+
+    public enum Mode {
+        FAIL_FAST, // stop at the first invalid request
+        COLLECT_ALL // report every error of every request
+    }
+
+    static final int CHUNK_SIZE = 16384;
+    static final long MAX_AMOUNT = 9999999999L; // 10 digit amount field, in cents
+    private static final long[] POWERS_OF_TEN = {1L, 10L, 100L, 1000L, 10000L, 100000L, 1000000L, 10000000L,
+            100000000L, 1000000000L, 10000000000L};
+
+    private ACHPaymentValidator() {
+    }
+
+    public static ACHValidationReport validate(List<ACHPaymentRequest> paymentRequests, Mode mode) {
+        int size = paymentRequests.size();
+        if (size == 0) {
+            // there is no file without an entry, so an empty list is as invalid as a bad request
+            return new ACHValidationReport(0, List.of(new ACHValidationReport.Error(0, "request", "at least one payment request is required")));
+        }
+        int chunks = (size + CHUNK_SIZE - 1) / CHUNK_SIZE;
+        // lowest index of an invalid request seen so far, lets fail-fast chunks further down the list give up early
+        AtomicInteger firstInvalid = new AtomicInteger(Integer.MAX_VALUE);
+        List<ACHValidationReport.Error>[] chunkErrors = newErrorLists(chunks);
+
+        IntStream range = IntStream.range(0, chunks);
+        (chunks > 1 ? range.parallel() : range).forEach(chunk -> {
+            int from = chunk * CHUNK_SIZE;
+            int to = Math.min(size, from + CHUNK_SIZE);
+            List<ACHValidationReport.Error> errors = chunkErrors[chunk];
+            for (int i = from; i < to; i++) {
+                if (mode == Mode.FAIL_FAST && i > firstInvalid.get()) {
+                    return;
+                }
+                if (validate(paymentRequests.get(i), i, mode, errors)) {
+                    continue;
+                }
+                firstInvalid.accumulateAndGet(i, Math::min);
+                if (mode == Mode.FAIL_FAST) {
+                    return;
+                }
+            }
+        });
+
+        List<ACHValidationReport.Error> errors = new ArrayList<>();
+        for (List<ACHValidationReport.Error> chunk : chunkErrors) {
+            errors.addAll(chunk);
+            if (mode == Mode.FAIL_FAST && !errors.isEmpty()) {
+                break; // chunks are in index order, so this is the first invalid request
+            }
+        }
+        return new ACHValidationReport(size, errors);
+    }
+
+    /**
+     * Validates streamed requests one at a time, as the returned iterator yields them, so an invalid request fails
+     * with an {@link ACHValidationException} before it reaches the writer rather than partway through its records.
+     * The report covers the requests read so far and the first invalid one.
+     */
+    public static Iterator<ACHPaymentRequest> validating(Iterator<ACHPaymentRequest> paymentRequests) {
+        return new Iterator<>() {
+            private final List<ACHValidationReport.Error> errors = new ArrayList<>(0); // only filled by a failure
+            private int index;
+
+            @Override
+            public boolean hasNext() {
+                return paymentRequests.hasNext();
+            }
+
+            @Override
+            public ACHPaymentRequest next() {
+                ACHPaymentRequest request = paymentRequests.next();
+                if (!validate(request, index, Mode.FAIL_FAST, errors)) {
+                    throw new ACHValidationException(new ACHValidationReport(index + 1, errors));
+                }
+                index++;
+                return request;
+            }
+        };
+    }
+
+    /**
+     * Checks that requests written into a single file, after the {@code totalDebitAmount} and
+     * {@code totalCreditAmount} cents already in it, keep the file's totals within the 12 digits of the file control
+     * record. Batches are split before their totals overflow, a single file cannot be, so the request that would take
+     * a total past {@link ACHAmounts#MAX_TOTAL} is reported. Expects requests that passed {@link #validate}.
+     */
+    public static ACHValidationReport validateFileTotals(List<ACHPaymentRequest> paymentRequests,
+                                                         long totalDebitAmount, long totalCreditAmount) {
+        List<ACHValidationReport.Error> errors = new ArrayList<>(0);
+        for (int i = 0; i < paymentRequests.size(); i++) {
+            ACHPaymentRequest request = paymentRequests.get(i);
+            long amount = ACHAmounts.toCents(request.getAmount());
+            boolean debit = ACHBatchKey.isDebit(request);
+            if (amount > ACHAmounts.MAX_TOTAL - (debit ? totalDebitAmount : totalCreditAmount)) {
+                errors.add(fileTotalError(i, request));
+                break;
+            }
+            if (debit) {
+                totalDebitAmount += amount;
+            } else {
+                totalCreditAmount += amount;
+            }
+        }
+        return new ACHValidationReport(paymentRequests.size(), errors);
+    }
+
+    /**
+     * The error reported for request {@code index} when its amount takes a file total past {@link ACHAmounts#MAX_TOTAL}.
+     */
+    public static ACHValidationReport.Error fileTotalError(int index, ACHPaymentRequest request) {
+        return new ACHValidationReport.Error(index, "amount", "takes the file's "
+                + (ACHBatchKey.isDebit(request) ? "debit" : "credit") + " total past 12 digits of cents, split the payments over several files");
+    }
+
+    /**
+     * Validates one request, appending its errors. Returns whether the request is valid.
+     */
+    static boolean validate(ACHPaymentRequest request, int index, Mode mode, List<ACHValidationReport.Error> errors) {
+        int before = errors.size();
+        if (request == null) {
+            errors.add(new ACHValidationReport.Error(index, "request", "is required"));
+            return false;
+        }
+        checkAlpha(request.getOriginatorCName(), 16, index, "originatorCName", errors);
+        checkPositiveDigits(request.getOriginatorRoutingNumber(), 9, index, "originatorRoutingNumber", errors);
+        checkPositiveDigits(request.getOriginatorAccountNumber(), 9, index, "originatorAccountNumber", errors);
+        checkAlpha(request.getReceiverName(), 22, index, "receiverName", errors);
+        checkRoutingNumber(request.getReceiverRoutingNumber(), index, errors);
+        checkAlpha(request.getReceiverAccountNumber(), 17, index, "receiverAccountNumber", errors);
+        checkAmount(request.getAmount(), index, errors);
+        checkTransactionType(request.getTransactionType(), index, errors);
+        checkAlpha(request.getOriginatorBDestination(), 23, index, "originatorBDestination", errors);
+        if (mode == Mode.FAIL_FAST && errors.size() > before + 1) {
+            errors.subList(before + 1, errors.size()).clear(); // only the first reason is reported
+        }
+        return errors.size() == before;
+    }
+
+    /**
+     * ABA routing number check: 3, 7 and 1 weighted digit sum must be a multiple of 10.
+     */
+    public static boolean isValidRoutingNumber(CharSequence routingNumber) {
+        if (routingNumber == null || routingNumber.length() != 9) {
+            return false;
+        }
+        int sum = 0;
+        for (int i = 0; i < 9; i++) {
+            char c = routingNumber.charAt(i);
+            if (c < '0' || c > '9') {
+                return false;
+            }
+            int weight = i % 3 == 0 ? 3 : i % 3 == 1 ? 7 : 1;
+            sum += weight * (c - '0');
+        }
+        return sum % 10 == 0;
+    }
+
+    private static void checkAlpha(String value, int maxLength, int index, String field, List<ACHValidationReport.Error> errors) {
+        if (value == null || value.isBlank()) {
+            errors.add(new ACHValidationReport.Error(index, field, "is required"));
+            return;
+        }
+        if (value.length() > maxLength) {
+            errors.add(new ACHValidationReport.Error(index, field, "must be at most " + maxLength + " characters"));
+            return;
+        }
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c < ' ' || c > '~') {
+                errors.add(new ACHValidationReport.Error(index, field, "must only contain printable ASCII characters"));
+                return;
+            }
+        }
+    }
+
+    private static void checkPositiveDigits(long value, int maxDigits, int index, String field, List<ACHValidationReport.Error> errors) {
+        if (value <= 0) {
+            errors.add(new ACHValidationReport.Error(index, field, "is required"));
+        } else if (value >= POWERS_OF_TEN[maxDigits]) {
+            errors.add(new ACHValidationReport.Error(index, field, "must be at most " + maxDigits + " digits"));
+        }
+    }
+
+    private static void checkRoutingNumber(String value, int index, List<ACHValidationReport.Error> errors) {
+        if (value == null || value.isEmpty()) {
+            errors.add(new ACHValidationReport.Error(index, "receiverRoutingNumber", "is required"));
+        } else if (value.length() != 9) {
+            errors.add(new ACHValidationReport.Error(index, "receiverRoutingNumber", "must be 9 digits"));
+        } else if (!isValidRoutingNumber(value)) {
+            errors.add(new ACHValidationReport.Error(index, "receiverRoutingNumber", "must be numeric with a valid ABA check digit"));
+        }
+    }
+
+    private static void checkAmount(double amount, int index, List<ACHValidationReport.Error> errors) {
+        if (!(amount > 0)) { // also rejects NaN
+            errors.add(new ACHValidationReport.Error(index, "amount", "must be greater than zero"));
+        } else if (ACHAmounts.toCents(amount) > MAX_AMOUNT) {
+            errors.add(new ACHValidationReport.Error(index, "amount", "must fit in 10 digits of cents"));
+        } else if (ACHAmounts.hasFractionalCents(amount)) {
+            errors.add(new ACHValidationReport.Error(index, "amount", "must be a whole number of cents"));
+        }
+    }
+
+    private static void checkTransactionType(String value, int index, List<ACHValidationReport.Error> errors) {
+        if (value == null || value.isEmpty()) {
+            errors.add(new ACHValidationReport.Error(index, "transactionType", "is required"));
+        } else if (!"debit".equalsIgnoreCase(value) && !"credit".equalsIgnoreCase(value)) {
+            errors.add(new ACHValidationReport.Error(index, "transactionType", "must be debit or credit"));
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<ACHValidationReport.Error>[] newErrorLists(int chunks) {
+        List<ACHValidationReport.Error>[] lists = new List[chunks];
+        for (int i = 0; i < chunks; i++) {
+            lists[i] = new ArrayList<>(0);
+        }
+        return lists;
+    }
+}
@@ -0,0 +1,22 @@
+package com.example.achpaymentpoc.validation;
+
+/**
+ * Thrown when payment requests fail validation before anything was written for them.
+ */
+public class ACHValidationException extends RuntimeException {
+
+    private final ACHValidationReport report;
+
+    public ACHValidationException(ACHValidationReport report) {
+        super(report.getErrors().size() + " ACH payment validation errors, first: " + describe(report.getErrors().get(0)));
+        this.report = report;
+    }
+
+    private static String describe(ACHValidationReport.Error error) {
+        return "request " + error.getIndex() + " " + error.getField() + " " + error.getReason();
+    }
+
+    public ACHValidationReport getReport() {
+        return report;
+    }
+}
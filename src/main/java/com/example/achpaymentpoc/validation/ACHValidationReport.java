@@ -0,0 +1,32 @@
+package com.example.achpaymentpoc.validation;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * Result of validating a list of payment requests. Errors are ordered by request index.
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class ACHValidationReport {
+
+    private int checkedCount;
+    private List<Error> errors;
+
+    public boolean isValid() {
+        return errors.isEmpty();
+    }
+
+    @Data
+    @AllArgsConstructor
+    @NoArgsConstructor
+    public static class Error {
+        private int index;
+        private String field;
+        private String reason;
+    }
+}
@@ -0,0 +1,47 @@
+package com.example.achpaymentpoc.batch;
+
+import com.example.achpaymentpoc.dto.ACHPaymentRequest;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class ACHBatcherTests {
+
+	private static ACHPaymentRequest request(String transactionType) {
+		return new ACHPaymentRequest("Company A", 123456789L, 987654321L, "Vendor B", "987654321", "123456789", 10.00, transactionType, "USA Bank");
+	}
+
+	@Test
+	void continuesAFullBatchInANewOne() {
+		List<ACHPaymentRequest> requests = new ArrayList<>();
+		for (int i = 0; i < 5; i++) {
+			requests.add(request("debit"));
+		}
+		requests.add(request("credit"));
+		requests.add(request("debit"));
+
+		List<ACHBatch> batches = new ArrayList<>(ACHBatcher.group(requests, 2));
+
+		assertEquals(4, batches.size());
+		assertArrayEquals(new int[]{2, 2, 2, 1}, batches.stream().mapToInt(ACHBatch::getEntryCount).toArray());
+		assertEquals(2000, batches.get(2).getTotalDebitAmount()); // fifth debit and the one after the credit
+		assertEquals(1000, batches.get(3).getTotalCreditAmount());
+	}
+
+	@Test
+	void continuesABatchBeforeItsTotalOverflows() {
+		List<ACHPaymentRequest> requests = new ArrayList<>();
+		for (int i = 0; i < 101; i++) {
+			requests.add(new ACHPaymentRequest("Company A", 123456789L, 987654321L, "Vendor B", "987654321", "123456789", 99999999.99, "credit", "USA Bank"));
+		}
+
+		List<ACHBatch> batches = new ArrayList<>(ACHBatcher.group(requests));
+
+		assertArrayEquals(new int[]{100, 1}, batches.stream().mapToInt(ACHBatch::getEntryCount).toArray());
+		assertEquals(999999999900L, batches.get(0).getTotalCreditAmount());
+	}
+}
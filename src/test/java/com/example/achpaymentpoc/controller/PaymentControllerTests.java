@@ -0,0 +1,164 @@
+package com.example.achpaymentpoc.controller;
+
+import com.example.achpaymentpoc.dto.ACHPaymentRequest;
+import com.example.achpaymentpoc.jobs.ACHGenerationJob;
+import com.example.achpaymentpoc.jobs.ACHGenerationJobService;
+import com.example.achpaymentpoc.metrics.ACHMetrics;
+import com.example.achpaymentpoc.services.impl.ACHDailyFileBuilder;
+import com.example.achpaymentpoc.services.impl.ACHServiceImpl;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.http.MediaType;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+class PaymentControllerTests {
+
+	private static final String REQUESTS = "[{\"originatorCName\": \"Company A\", \"originatorRoutingNumber\": 123456789, \"originatorAccountNumber\": 987654321, \"receiverName\": \"Vendor B\", \"receiverRoutingNumber\": \"987654321\", \"receiverAccountNumber\": \"123456789\", \"amount\": 1000.00, \"transactionType\": \"debit\", \"originatorBDestination\": \"USA Bank\"}]";
+
+	@TempDir
+	Path tempDir;
+
+	private final CountDownLatch gate = new CountDownLatch(1);
+	private ACHGenerationJobService jobService;
+	private PaymentController controller;
+
+	private MockMvc mockMvc(int queueCapacity) throws IOException {
+		ACHServiceImpl achService = new ACHServiceImpl() {
+			@Override
+			public void writeACHFile(List<ACHPaymentRequest> paymentRequests, String filePath) throws IOException {
+				try {
+					gate.await();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new InterruptedIOException();
+				}
+				super.writeACHFile(paymentRequests, filePath);
+			}
+		};
+		jobService = new ACHGenerationJobService(achService, ACHMetrics.noop(), tempDir.toString(), 1, queueCapacity, Duration.ofHours(1));
+		controller = new PaymentController();
+		ReflectionTestUtils.setField(controller, "jobService", jobService);
+		return MockMvcBuilders.standaloneSetup(controller).build();
+	}
+
+	@AfterEach
+	void shutdown() {
+		jobService.shutdown(); // interrupts jobs still held at the gate before they write anything
+	}
+
+	private static String jobId(String location) {
+		return location.substring(location.lastIndexOf('/') + 1);
+	}
+
+	@Test
+	void downloadsTheFileOfAFinishedJob() throws Exception {
+		MockMvc mockMvc = mockMvc(1);
+		String location = mockMvc.perform(post("/payment/jobs").contentType(MediaType.APPLICATION_JSON).content(REQUESTS))
+				.andExpect(status().isAccepted())
+				.andReturn().getResponse().getHeader("Location");
+		String jobId = jobId(location);
+		mockMvc.perform(get("/payment/jobs/{jobId}/file", jobId)).andExpect(status().isConflict());
+
+		gate.countDown();
+		ACHGenerationJob job = jobService.find(jobId).orElseThrow();
+		long deadline = System.nanoTime() + Duration.ofSeconds(10).toNanos();
+		while (!job.isFinished() && System.nanoTime() < deadline) {
+			Thread.sleep(5);
+		}
+		assertEquals(ACHGenerationJob.Status.COMPLETED, job.getStatus());
+
+		String file = Files.readString(Paths.get(job.getFilePath()), StandardCharsets.US_ASCII);
+		mockMvc.perform(get("/payment/jobs/{jobId}/file", jobId))
+				.andExpect(status().isOk())
+				.andExpect(header().string("Content-Disposition", "attachment; filename=\"ach-" + jobId + ".txt\""))
+				.andExpect(content().string(file));
+		assertTrue(file.startsWith("101 123456789 987654321"));
+	}
+
+	@Test
+	void answers429WhenTheJobQueueIsFull() throws Exception {
+		MockMvc mockMvc = mockMvc(1);
+		for (int i = 0; i < 2; i++) { // the first starts the only worker, the second fills the queue
+			mockMvc.perform(post("/payment/jobs").contentType(MediaType.APPLICATION_JSON).content(REQUESTS))
+					.andExpect(status().isAccepted());
+		}
+		mockMvc.perform(post("/payment/jobs").contentType(MediaType.APPLICATION_JSON).content(REQUESTS))
+				.andExpect(status().isTooManyRequests())
+				.andExpect(header().string("Retry-After", "1"));
+	}
+
+	@Test
+	void finalizesTheDailyFileOnlyInsideTheOutputDirectory() throws Exception {
+		MockMvc mockMvc = mockMvc(1);
+		ACHDailyFileBuilder dailyFileBuilder = new ACHDailyFileBuilder(new ACHServiceImpl(), tempDir.resolve("daily").toString(), false);
+		dailyFileBuilder.recover();
+		dailyFileBuilder.append(List.of(new ACHPaymentRequest("Company A", 123456789L, 987654321L, "Vendor B", "011000015",
+				"123456789", 10.00, "debit", "USA Bank")));
+		ReflectionTestUtils.setField(controller, "dailyFileBuilder", dailyFileBuilder);
+		ReflectionTestUtils.setField(controller, "outputDirectory", tempDir.resolve("output").toString());
+
+		for (String fileName : List.of("../achDailyFile.txt", "/tmp/achDailyFile.txt", "..", "daily\\achDailyFile.txt")) {
+			mockMvc.perform(post("/payment/daily/finalize").param("fileName", fileName)).andExpect(status().isBadRequest());
+		}
+		Files.createDirectories(tempDir.resolve("output"));
+		Files.writeString(tempDir.resolve("output/earlier.txt"), "an earlier file");
+		mockMvc.perform(post("/payment/daily/finalize").param("fileName", "earlier.txt")).andExpect(status().isConflict());
+		mockMvc.perform(post("/payment/daily/finalize").param("fileName", "achDailyFile.txt")).andExpect(status().isOk());
+		assertTrue(Files.exists(tempDir.resolve("output/achDailyFile.txt")));
+		assertEquals("an earlier file", Files.readString(tempDir.resolve("output/earlier.txt")));
+		dailyFileBuilder.close();
+	}
+
+	@Test
+	void rejectsAnEmptyRequestListAsInvalid() throws Exception {
+		MockMvc mockMvc = mockMvc(1);
+		ReflectionTestUtils.setField(controller, "achService", new ACHServiceImpl());
+		mockMvc.perform(post("/payment/ach").contentType(MediaType.APPLICATION_JSON).content("[]"))
+				.andExpect(status().isBadRequest())
+				.andExpect(jsonPath("$.checkedCount").value(0))
+				.andExpect(jsonPath("$.errors[0].field").value("request"));
+	}
+
+	@Test
+	void rejectsAnInvalidStreamedRequestBeforeItIsWritten() throws Exception {
+		MockMvc mockMvc = mockMvc(1);
+		ReflectionTestUtils.setField(controller, "achService", new ACHServiceImpl());
+		ReflectionTestUtils.setField(controller, "objectMapper", new ObjectMapper());
+		String valid = REQUESTS.substring(1, REQUESTS.length() - 1).replace("\"987654321\", \"receiverAccountNumber", "\"011000015\", \"receiverAccountNumber");
+		String invalid = valid.replace("011000015", "01100001x");
+
+		MvcResult result = mockMvc.perform(post("/payment/ach/stream").contentType(MediaType.APPLICATION_NDJSON)
+						.content(valid + "\n" + invalid + "\n"))
+				.andReturn();
+		mockMvc.perform(asyncDispatch(result))
+				.andExpect(status().isBadRequest())
+				.andExpect(jsonPath("$.checkedCount").value(2))
+				.andExpect(jsonPath("$.errors[0].index").value(1))
+				.andExpect(jsonPath("$.errors[0].field").value("receiverRoutingNumber"));
+	}
+}
@@ -0,0 +1,98 @@
+package com.example.achpaymentpoc.idempotency;
+
+import com.example.achpaymentpoc.dto.ACHPaymentRequest;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ACHDuplicateIndexTests {
+
+	@TempDir
+	Path tempDir;
+
+	private final AtomicReference<LocalDate> today = new AtomicReference<>(LocalDate.of(2024, 3, 1));
+
+	private ACHDuplicateIndex open(int capacity) throws Exception {
+		ACHDuplicateIndex index = new ACHDuplicateIndex(tempDir.resolve("duplicates.idx").toString(), capacity,
+				Duration.ofDays(30), false, today::get);
+		index.open();
+		return index;
+	}
+
+	private static List<ACHPaymentRequest> requests(int from, int to) {
+		List<ACHPaymentRequest> requests = new ArrayList<>();
+		for (int i = from; i < to; i++) {
+			requests.add(new ACHPaymentRequest("Company A", 123456789L, 987654321L, "Vendor " + i, "987654321",
+					String.valueOf(i), 10.25, "debit", "USA Bank"));
+		}
+		return requests;
+	}
+
+	@Test
+	void rejectsPaymentsSeenBeforeOrRepeatedInTheList() throws Exception {
+		ACHDuplicateIndex index = open(64);
+		index.reserve(requests(0, 10), false);
+
+		List<ACHPaymentRequest> retry = new ArrayList<>(requests(9, 12));
+		retry.add(requests(11, 12).get(0));
+		DuplicatePaymentException e = assertThrows(DuplicatePaymentException.class, () -> index.reserve(retry, false));
+		assertEquals(List.of(0, 2, 3), e.getIndexes());
+		assertEquals(10, index.size()); // nothing of the rejected list was recorded
+
+		index.release(index.reserve(requests(10, 11), false));
+		assertFalse(index.contains(requests(10, 11).get(0)));
+		index.close();
+	}
+
+	@Test
+	void releasingAllowedDuplicatesKeepsTheOriginalPayments() throws Exception {
+		ACHDuplicateIndex index = open(64);
+		index.reserve(requests(0, 5), false);
+
+		long[] reserved = index.reserve(requests(4, 6), true); // generation of these fails afterwards
+		assertEquals(1, reserved.length); // only the new payment
+		index.release(reserved);
+		assertTrue(index.contains(requests(4, 5).get(0)));
+		assertFalse(index.contains(requests(5, 6).get(0)));
+		assertThrows(DuplicatePaymentException.class, () -> index.reserve(requests(4, 5), false));
+		index.close();
+	}
+
+	@Test
+	void survivesRestartsAndGrows() throws Exception {
+		ACHDuplicateIndex index = open(16);
+		index.reserve(requests(0, 100), false); // more than the initial capacity
+		assertTrue(index.capacity() >= 128);
+		index.close();
+
+		ACHDuplicateIndex reopened = open(16);
+		assertEquals(100, reopened.size());
+		assertTrue(reopened.contains(requests(42, 43).get(0)));
+		assertFalse(reopened.contains(requests(100, 101).get(0)));
+		assertThrows(DuplicatePaymentException.class, () -> reopened.reserve(requests(99, 101), false));
+		reopened.close();
+	}
+
+	@Test
+	void keysPaymentsOnTheirSettlementDate() throws Exception {
+		ACHDuplicateIndex index = open(64);
+		index.reserve(requests(0, 5), false);
+		today.set(today.get().plusDays(1)); // the same payments again the next day, e.g. a recurring payment
+
+		index.reserve(requests(0, 5), false);
+		assertEquals(10, index.size());
+		assertThrows(DuplicatePaymentException.class, () -> index.reserve(requests(4, 5), false));
+		index.close();
+	}
+}
@@ -0,0 +1,41 @@
+package com.example.achpaymentpoc.idempotency;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class ACHIdempotencyCacheTests {
+
+	@TempDir
+	Path tempDir;
+
+	private static final byte[] BODY = ACHIdempotencyCache.fingerprint("[{\"amount\": 10.00}]".getBytes(StandardCharsets.UTF_8));
+
+	@Test
+	void runsOncePerKeyAndRejectsADifferentBody() throws Exception {
+		byte[] otherBody = ACHIdempotencyCache.fingerprint("[{\"amount\": 10.01}]".getBytes(StandardCharsets.UTF_8));
+		ACHIdempotencyCache cache = new ACHIdempotencyCache(tempDir.toString(), Duration.ofHours(1));
+		AtomicInteger runs = new AtomicInteger();
+		assertEquals(1, cache.execute("ach", "key-1", BODY, runs::incrementAndGet));
+		assertEquals(1, cache.execute("ach", "key-1", BODY, runs::incrementAndGet));
+		assertEquals(2, cache.execute("generate", "key-1", BODY, runs::incrementAndGet)); // keys are per endpoint
+		assertThrows(IdempotencyKeyReusedException.class, () -> cache.execute("ach", "key-1", otherBody, runs::incrementAndGet));
+	}
+
+	@Test
+	void forgetsFailedRequests() throws Exception {
+		ACHIdempotencyCache cache = new ACHIdempotencyCache(tempDir.toString(), Duration.ofHours(1));
+		assertThrows(IOException.class, () -> cache.execute("ach", "key-1", BODY, () -> {
+			throw new IOException("disk full");
+		}));
+		assertEquals("done", cache.execute("ach", "key-1", BODY, () -> "done"));
+	}
+}
@@ -0,0 +1,54 @@
+package com.example.achpaymentpoc.ingest;
+
+import com.example.achpaymentpoc.dto.ACHPaymentRequest;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class ACHPaymentRequestReaderTests {
+
+	private static final String VENDOR_B = "{\"originatorCName\": \"Company A\", \"originatorRoutingNumber\": 123456789, \"originatorAccountNumber\": 987654321, \"receiverName\": \"Vendor B\", \"receiverRoutingNumber\": \"987654321\", \"receiverAccountNumber\": \"123456789\", \"amount\": 1000.00, \"transactionType\": \"debit\", \"originatorBDestination\": \"USA Bank\"}";
+	private static final String VENDOR_C = VENDOR_B.replace("Vendor B", "Vendor C");
+
+	private final ObjectMapper objectMapper = new ObjectMapper();
+
+	private List<ACHPaymentRequest> readAll(String body) throws IOException {
+		List<ACHPaymentRequest> requests = new ArrayList<>();
+		try (ACHPaymentRequestReader reader = new ACHPaymentRequestReader(objectMapper, new ByteArrayInputStream(body.getBytes(StandardCharsets.UTF_8)))) {
+			reader.forEachRemaining(requests::add);
+		}
+		return requests;
+	}
+
+	@Test
+	void readsJsonArray() throws IOException {
+		List<ACHPaymentRequest> requests = readAll("[" + VENDOR_B + ", " + VENDOR_C + "]");
+		assertEquals(2, requests.size());
+		assertEquals("Vendor C", requests.get(1).getReceiverName());
+	}
+
+	@Test
+	void readsNewlineDelimitedJson() throws IOException {
+		List<ACHPaymentRequest> requests = readAll(VENDOR_B + "\n" + VENDOR_C + "\n");
+		assertEquals(2, requests.size());
+		assertEquals(987654321L, requests.get(0).getOriginatorAccountNumber());
+	}
+
+	@Test
+	void emptyArrayHasNoRequests() throws IOException {
+		assertEquals(0, readAll("[]").size());
+	}
+
+	@Test
+	void rejectsScalarBody() {
+		assertThrows(IOException.class, () -> readAll("42"));
+	}
+}
@@ -0,0 +1,151 @@
+package com.example.achpaymentpoc.jobs;
+
+import com.example.achpaymentpoc.dto.ACHPaymentRequest;
+import com.example.achpaymentpoc.idempotency.ACHDuplicateIndex;
+import com.example.achpaymentpoc.idempotency.DuplicatePaymentException;
+import com.example.achpaymentpoc.metrics.ACHMetrics;
+import com.example.achpaymentpoc.services.impl.ACHServiceImpl;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ACHGenerationJobServiceTests {
+
+	@TempDir
+	Path tempDir;
+
+	private final GatedACHService achService = new GatedACHService();
+	private ACHGenerationJobService jobService;
+
+	/**
+	 * Holds every generation until {@link #gate} is opened, so tests can observe queued and running jobs.
+	 */
+	static class GatedACHService extends ACHServiceImpl {
+
+		final CountDownLatch gate = new CountDownLatch(1);
+
+		@Override
+		public void writeACHFile(List<ACHPaymentRequest> paymentRequests, String filePath) throws IOException {
+			try {
+				gate.await();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new InterruptedIOException();
+			}
+			super.writeACHFile(paymentRequests, filePath);
+		}
+	}
+
+	static List<ACHPaymentRequest> requests() {
+		return List.of(new ACHPaymentRequest("Company A", 123456789L, 987654321L, "Vendor B", "987654321", "123456789", 1000.00, "debit", "USA Bank"));
+	}
+
+	static ACHGenerationJob await(ACHGenerationJob job, ACHGenerationJob.Status status) throws InterruptedException {
+		long deadline = System.nanoTime() + Duration.ofSeconds(10).toNanos();
+		while (job.getStatus() != status && System.nanoTime() < deadline) {
+			Thread.sleep(5);
+		}
+		assertEquals(status, job.getStatus());
+		return job;
+	}
+
+	private ACHGenerationJobService jobService(int threads, int queueCapacity) throws IOException {
+		jobService = new ACHGenerationJobService(achService, ACHMetrics.noop(), tempDir.toString(), threads, queueCapacity, Duration.ofHours(1));
+		return jobService;
+	}
+
+	@AfterEach
+	void shutdown() {
+		jobService.shutdown(); // interrupts jobs still held at the gate before they write anything
+	}
+
+	@Test
+	void movesJobsFromQueuedThroughRunningToCompleted() throws Exception {
+		jobService(1, 2);
+		ACHGenerationJob first = jobService.submit(requests());
+		await(first, ACHGenerationJob.Status.RUNNING);
+		ACHGenerationJob second = jobService.submit(requests());
+
+		assertEquals(ACHGenerationJob.Status.QUEUED, second.getStatus());
+		assertEquals(1, jobService.queuedJobs());
+		assertNotNull(first.getStartedAt());
+
+		achService.gate.countDown();
+		await(first, ACHGenerationJob.Status.COMPLETED);
+		await(second, ACHGenerationJob.Status.COMPLETED);
+		assertNotNull(first.getCompletedAt());
+		assertEquals(first, jobService.find(first.getId()).orElseThrow());
+	}
+
+	@Test
+	void writesEachJobToItsOwnFile() throws Exception {
+		jobService(2, 2);
+		achService.gate.countDown();
+		ACHGenerationJob first = await(jobService.submit(requests()), ACHGenerationJob.Status.COMPLETED);
+		ACHGenerationJob second = await(jobService.submit(requests()), ACHGenerationJob.Status.COMPLETED);
+
+		assertNotEquals(first.getFilePath(), second.getFilePath());
+		for (ACHGenerationJob job : List.of(first, second)) {
+			Path file = Paths.get(job.getFilePath());
+			assertEquals(tempDir.resolve("ach-" + job.getId() + ".txt"), file);
+			assertTrue(achService.verifyACHFile(file.toString()).isValid());
+		}
+	}
+
+	@Test
+	void recordsTheErrorOfAFailedJob() throws Exception {
+		jobService(1, 1);
+		achService.gate.countDown();
+		ACHGenerationJob job = await(jobService.submit(List.of()), ACHGenerationJob.Status.FAILED);
+
+		assertEquals("At least one ACH payment request is required", job.getError());
+		assertNotNull(job.getCompletedAt());
+		assertNull(job.getFilePath());
+	}
+
+	@Test
+	void rejectsJobsOnceTheQueueIsFull() throws Exception {
+		jobService(1, 1);
+		await(jobService.submit(requests()), ACHGenerationJob.Status.RUNNING);
+		jobService.submit(requests());
+
+		assertThrows(RejectedExecutionException.class, () -> jobService.submit(requests()));
+		assertEquals(1, jobService.runningJobs());
+		assertEquals(1, jobService.queuedJobs());
+	}
+
+	@Test
+	void recordsPaymentsInTheDuplicateIndexUntilAJobFails() throws Exception {
+		ACHDuplicateIndex duplicateIndex = new ACHDuplicateIndex(tempDir.resolve("duplicates.idx").toString(), 64, Duration.ofDays(30), false);
+		duplicateIndex.open();
+		jobService(1, 1);
+		ReflectionTestUtils.setField(jobService, "duplicateIndex", duplicateIndex);
+		await(jobService.submit(requests()), ACHGenerationJob.Status.RUNNING);
+
+		assertThrows(DuplicatePaymentException.class, () -> jobService.submit(requests()));
+		jobService.shutdown(); // the running job fails
+		long deadline = System.nanoTime() + Duration.ofSeconds(10).toNanos();
+		while (duplicateIndex.contains(requests().get(0)) && System.nanoTime() < deadline) {
+			Thread.sleep(5);
+		}
+		assertEquals(0, duplicateIndex.size());
+		duplicateIndex.close();
+	}
+}
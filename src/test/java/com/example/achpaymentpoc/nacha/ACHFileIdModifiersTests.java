@@ -0,0 +1,32 @@
+package com.example.achpaymentpoc.nacha;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class ACHFileIdModifiersTests {
+
+	private final AtomicReference<LocalDate> today = new AtomicReference<>(LocalDate.of(2024, 3, 1));
+	private final ACHFileIdModifiers modifiers = new ACHFileIdModifiers(today::get);
+
+	@Test
+	void allocatesLettersThenDigitsAcrossRunsOfTheSameDay() {
+		assertEquals('A', modifiers.next());
+		assertEquals("BCD", modifiers.next(3));
+		assertEquals("EFGHIJKLMNOPQRSTUVWXYZ0123456789", modifiers.next(32));
+		assertEquals('A', modifiers.next()); // all 36 used, starts over
+		assertThrows(IllegalArgumentException.class, () -> modifiers.next(37));
+	}
+
+	@Test
+	void startsOverOnTheNextDay() {
+		modifiers.next(5);
+		today.set(today.get().plusDays(1));
+
+		assertEquals("AB", modifiers.next(2));
+	}
+}
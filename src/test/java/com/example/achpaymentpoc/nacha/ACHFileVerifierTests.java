@@ -0,0 +1,66 @@
+package com.example.achpaymentpoc.nacha;
+
+import com.example.achpaymentpoc.dto.ACHPaymentRequest;
+import com.example.achpaymentpoc.services.impl.ACHServiceImpl;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ACHFileVerifierTests {
+
+	@TempDir
+	Path tempDir;
+
+	private Path generate() throws Exception {
+		List<ACHPaymentRequest> requests = new ArrayList<>();
+		for (int i = 0; i < 50; i++) {
+			requests.add(new ACHPaymentRequest("Company " + (i % 3), 123456789L, 987654320L + (i % 3), "Vendor " + i,
+					String.valueOf(100000000 + i), String.valueOf(i), 100 + i, i % 2 == 0 ? "credit" : "debit", "USA Bank"));
+		}
+		Path file = tempDir.resolve("ach.txt");
+		new ACHServiceImpl().writeACHFile(requests, file.toString());
+		return file;
+	}
+
+	@Test
+	void generatedFileIsConsistent() throws Exception {
+		ACHFileReport report = ACHFileVerifier.verify(generate());
+		assertTrue(report.isValid(), report.getMismatches().toString());
+		assertEquals(50, report.getEntryAddendaCount());
+		assertEquals(6, report.getBatchCount());
+	}
+
+	@Test
+	void reportsTamperedAmount() throws Exception {
+		Path file = generate();
+		byte[] bytes = Files.readAllBytes(file);
+		int entry = 2 * ACHRecordWriter.LINE_SIZE; // first entry detail record
+		bytes[entry + 38] = (byte) (bytes[entry + 38] == '9' ? '0' : bytes[entry + 38] + 1); // tens digit of the amount
+		Files.write(file, bytes);
+
+		ACHFileReport report = ACHFileVerifier.verify(file);
+		assertFalse(report.isValid());
+		assertEquals(2, report.getMismatches().size()); // batch total and file total
+		assertTrue(report.getMismatches().get(0).getField().startsWith("batchTotal"));
+	}
+
+	@Test
+	void readerExposesRecordsWithoutCopying() throws Exception {
+		try (ACHFileReader reader = ACHFileReader.open(generate())) {
+			assertEquals(ACHRecordView.FILE_HEADER, reader.next().recordType());
+			assertEquals(ACHRecordView.BATCH_HEADER, reader.next().recordType());
+			ACHRecordView entry = reader.next();
+			assertEquals(100000000L / 10, entry.receivingDFIIdentification());
+			assertEquals(10000, entry.amount()); // cents
+			assertEquals("Vendor 0", entry.alpha(55, 22));
+		}
+	}
+}
@@ -0,0 +1,32 @@
+package com.example.achpaymentpoc.nacha;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+class ACHRecordTemplateCacheTests {
+
+	private static byte[] template(char c) {
+		byte[] template = new byte[ACHRecordWriter.RECORD_SIZE];
+		Arrays.fill(template, (byte) c);
+		return template;
+	}
+
+	@Test
+	void evictsTheLeastRecentlyUsedTemplate() {
+		ACHRecordTemplateCache cache = new ACHRecordTemplateCache(2);
+		byte[] a = cache.get("a", () -> template('a'));
+		cache.get("b", () -> template('b'));
+		assertSame(a, cache.get("a", () -> template('x'))); // a is now more recent than b
+		cache.get("c", () -> template('c')); // evicts b
+		cache.get("b", () -> template('b'));
+
+		assertEquals(1, cache.hits());
+		assertEquals(4, cache.misses());
+		assertEquals(2, cache.evictions());
+		assertEquals(2, cache.size());
+	}
+}
@@ -0,0 +1,31 @@
+package com.example.achpaymentpoc.nacha;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class ACHRecordWriterTests {
+
+	@Test
+	void zeroFillsNumbersThatFitTheField() throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		ACHRecordWriter writer = new ACHRecordWriter(out);
+		writer.digits(42, 6).digits(999999, 6).spaces(ACHRecordWriter.RECORD_SIZE - 12);
+		writer.endRecord(false);
+		writer.flush();
+
+		assertEquals("000042999999", out.toString(StandardCharsets.US_ASCII).substring(0, 12));
+	}
+
+	@Test
+	void rejectsNumbersWiderThanTheField() {
+		ACHRecordWriter writer = new ACHRecordWriter(new ByteArrayOutputStream());
+
+		assertThrows(IllegalArgumentException.class, () -> writer.digits(1_000_000, 6));
+	}
+}
@@ -0,0 +1,159 @@
+package com.example.achpaymentpoc.services.impl;
+
+import com.example.achpaymentpoc.dto.ACHDailyFileStatus;
+import com.example.achpaymentpoc.dto.ACHPaymentRequest;
+import com.example.achpaymentpoc.nacha.ACHFileReport;
+import com.example.achpaymentpoc.nacha.ACHFileVerifier;
+import com.example.achpaymentpoc.nacha.ACHRecordWriter;
+import com.example.achpaymentpoc.validation.ACHValidationException;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ACHDailyFileBuilderTests {
+
+	@TempDir
+	Path tempDir;
+
+	private ACHDailyFileBuilder open() throws Exception {
+		return open(new ACHServiceImpl());
+	}
+
+	private ACHDailyFileBuilder open(ACHServiceImpl achService) throws Exception {
+		ACHDailyFileBuilder builder = new ACHDailyFileBuilder(achService, tempDir.resolve("daily").toString(), false);
+		builder.recover();
+		return builder;
+	}
+
+	private static ACHPaymentRequest request(int i, String type) {
+		return new ACHPaymentRequest("Company A", 123456789L, 987654321L, "Vendor " + i, "011000015",
+				String.valueOf(i), 100 + i, type, "USA Bank");
+	}
+
+	@Test
+	void appendsAndFinalizesAConsistentFile() throws Exception {
+		ACHDailyFileBuilder builder = open();
+		builder.append(List.of(request(1, "debit"), request(2, "credit")));
+		ACHDailyFileStatus status = builder.append(List.of(request(3, "debit")));
+		assertEquals(2, status.getBatchCount());
+		assertEquals(3, status.getEntryCount());
+		assertEquals(20400, status.getTotalDebitAmount()); // cents
+
+		Path file = tempDir.resolve("ach.txt");
+		builder.finalizeFile(file.toString());
+		ACHFileReport report = ACHFileVerifier.verify(file);
+		assertTrue(report.isValid(), report.getMismatches().toString());
+		assertEquals(3, report.getEntryAddendaCount());
+		assertEquals(0, builder.status().getEntryCount());
+		builder.close();
+	}
+
+	@Test
+	void recoversFromTheJournalAfterARestart() throws Exception {
+		ACHDailyFileBuilder builder = open();
+		builder.append(List.of(request(1, "debit"), request(2, "credit")));
+		builder.close();
+		// an entry spooled but never journaled, as if the process died in between
+		try (FileChannel spool = FileChannel.open(tempDir.resolve("daily/batch-0.spool"), StandardOpenOption.APPEND)) {
+			spool.write(ByteBuffer.wrap(new byte[40]));
+		}
+
+		ACHDailyFileBuilder recovered = open();
+		assertEquals(2, recovered.status().getEntryCount());
+		recovered.append(List.of(request(3, "debit")));
+		Path file = tempDir.resolve("ach.txt");
+		recovered.finalizeFile(file.toString());
+		ACHFileReport report = ACHFileVerifier.verify(file);
+		assertTrue(report.isValid(), report.getMismatches().toString());
+		assertEquals(3, report.getEntryAddendaCount());
+		assertFalse(Files.exists(tempDir.resolve("daily/batch-0.spool")));
+		recovered.close();
+	}
+
+	@Test
+	void rejectedEntriesLeaveNothingBehind() throws Exception {
+		ACHDailyFileBuilder builder = open();
+		builder.append(List.of(request(1, "debit")));
+		ACHPaymentRequest invalid = request(2, "debit");
+		invalid.setReceiverRoutingNumber("12345678X");
+		assertThrows(ACHValidationException.class, () -> builder.append(List.of(request(3, "debit"), invalid)));
+		builder.append(List.of(request(4, "debit")));
+
+		Path file = tempDir.resolve("ach.txt");
+		builder.finalizeFile(file.toString());
+		ACHFileReport report = ACHFileVerifier.verify(file);
+		assertTrue(report.isValid(), report.getMismatches().toString());
+		assertEquals(2, report.getEntryAddendaCount());
+		builder.close();
+	}
+
+	@Test
+	void keepsTheFileTotalsWithinTwelveDigits() throws Exception {
+		ACHDailyFileBuilder builder = open();
+		List<ACHPaymentRequest> requests = new ArrayList<>();
+		for (int i = 0; i < 100; i++) {
+			ACHPaymentRequest request = request(i, "credit");
+			request.setAmount(99999999.99);
+			requests.add(request);
+		}
+		builder.append(requests);
+		assertThrows(ACHValidationException.class, () -> builder.append(requests.subList(0, 1)));
+		assertEquals(100, builder.status().getEntryCount());
+
+		Path file = tempDir.resolve("ach.txt");
+		builder.finalizeFile(file.toString());
+		ACHFileReport report = ACHFileVerifier.verify(file);
+		assertTrue(report.isValid(), report.getMismatches().toString());
+		builder.close();
+	}
+
+	@Test
+	void refusesToRecoverASpoolShorterThanItsJournal() throws Exception {
+		ACHDailyFileBuilder builder = open();
+		builder.append(List.of(request(1, "debit"), request(2, "debit")));
+		builder.close();
+		try (FileChannel spool = FileChannel.open(tempDir.resolve("daily/batch-0.spool"), StandardOpenOption.WRITE)) {
+			spool.truncate(ACHRecordWriter.LINE_SIZE); // lost the second, journaled entry
+		}
+
+		ACHDailyFileBuilder recovered = new ACHDailyFileBuilder(new ACHServiceImpl(), tempDir.resolve("daily").toString(), false);
+		assertThrows(IOException.class, recovered::recover);
+		recovered.close();
+	}
+
+	@Test
+	void completesAFinalizationInterruptedAfterTheMove() throws Exception {
+		ACHDailyFileBuilder builder = open(new ACHServiceImpl() {
+			@Override
+			void indexTraceNumbers(Path file) {
+				throw new IllegalStateException("crashed before the new day was started");
+			}
+		});
+		builder.append(List.of(request(1, "debit"), request(2, "credit")));
+		Path file = tempDir.resolve("ach.txt");
+		assertThrows(IllegalStateException.class, () -> builder.finalizeFile(file.toString()));
+		builder.close();
+		assertTrue(Files.exists(file));
+
+		ACHDailyFileBuilder recovered = open();
+		assertEquals(0, recovered.status().getEntryCount()); // not finalized a second time
+		assertThrows(IllegalStateException.class, () -> recovered.finalizeFile(file.toString()));
+		ACHFileReport report = ACHFileVerifier.verify(file);
+		assertTrue(report.isValid(), report.getMismatches().toString());
+		assertEquals(2, report.getEntryAddendaCount());
+		recovered.close();
+	}
+}
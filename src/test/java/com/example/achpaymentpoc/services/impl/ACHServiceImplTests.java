@@ -0,0 +1,207 @@
+package com.example.achpaymentpoc.services.impl;
+
+import com.example.achpaymentpoc.dto.ACHPaymentRequest;
+import com.example.achpaymentpoc.nacha.ACHFileReport;
+import com.example.achpaymentpoc.nacha.ACHFileVerifier;
+import com.example.achpaymentpoc.trace.ACHTraceSequences;
+import com.example.achpaymentpoc.validation.ACHValidationException;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ACHServiceImplTests {
+
+	private final ACHServiceImpl achService = new ACHServiceImpl();
+
+	private static List<ACHPaymentRequest> requests() {
+		return List.of(
+				new ACHPaymentRequest("Company A", 123456789L, 987654321L, "Vendor B", "987654321", "123456789", 1000.00, "debit", "USA Bank"),
+				new ACHPaymentRequest("Company A", 123456789L, 987654321L, "Vendor C", "987654321", "123456789", 1500.00, "debit", "USA Bank"));
+	}
+
+	// Starts the trace sequences over, so a second generation of the same requests renders the same trace numbers
+	private void restartTraceSequences() {
+		ReflectionTestUtils.setField(achService, "traceSequences", new ACHTraceSequences());
+	}
+
+	@Test
+	void everyRecordIsFixedWidth() {
+		String[] lines = achService.generateACHFile(requests()).split("\n");
+		for (String line : lines) {
+			assertEquals(94, line.length(), line);
+		}
+		assertTrue(lines[0].startsWith("101 123456789 987654321"));
+		assertEquals("627987654321123456789        0000100000123456789012345Vendor B              A10987654320000001", lines[2]);
+	}
+
+	@Test
+	void groupsEntriesIntoBatches() {
+		List<ACHPaymentRequest> requests = new ArrayList<>(requests());
+		requests.add(new ACHPaymentRequest("Company A", 123456789L, 987654321L, "Vendor D", "123456780", "55555", 250.00, "credit", "USA Bank"));
+		String[] lines = achService.generateACHFile(requests).split("\n");
+		// file header, debit batch (5, 6, 6, 8), credit batch (5, 6, 8), file control, padding
+		assertEquals(10, lines.length);
+		assertEquals("822500000201975308640000002500000000000000000987654321                         987654320000000", lines[4]);
+		assertTrue(lines[5].startsWith("5220Company A"));
+		assertEquals("82200000010012345678000000000000000000025000", lines[7].substring(0, 44));
+		assertEquals("9000002000001000000030209876542000000250000000000025000", lines[8].substring(0, 55));
+	}
+
+	@Test
+	void streamedRequestsBatchConsecutiveRuns() throws Exception {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		achService.generateACHFile(requests().iterator(), out);
+		String[] lines = out.toString(StandardCharsets.US_ASCII).split("\n");
+		assertEquals(10, lines.length); // 6 records padded to one block
+		assertEquals('6', lines[3].charAt(0));
+		assertEquals("0000002", lines[3].substring(87));
+	}
+
+	@Test
+	void streamingOutputMatchesStringOutput() throws Exception {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		achService.generateACHFile(requests(), out);
+		String streamed = out.toString(StandardCharsets.US_ASCII);
+		restartTraceSequences();
+		String built = achService.generateACHFile(requests());
+		// only the file ID modifier differs between two generations
+		assertEquals(built.substring(34), streamed.substring(34));
+	}
+
+	@Test
+	void parallelGenerationIsByteIdenticalToSequential() {
+		List<ACHPaymentRequest> requests = new ArrayList<>();
+		for (int i = 0; i < 20000; i++) {
+			long originator = 900000000L + (i % 7);
+			requests.add(new ACHPaymentRequest("Company " + (i % 7), 123456789L, originator, "Vendor " + i,
+					String.valueOf(100000000 + i), String.valueOf(i), 100 + i, i % 3 == 0 ? "credit" : "debit", "USA Bank"));
+		}
+		String sequential = achService.generateACHFile(requests);
+		ReflectionTestUtils.setField(achService, "parallelThreshold", 1);
+		restartTraceSequences();
+		String parallel = achService.generateACHFile(requests);
+		// only the file ID modifier differs between two generations
+		assertEquals(sequential.substring(34), parallel.substring(34));
+		assertEquals(sequential.substring(0, 33), parallel.substring(0, 33));
+	}
+
+	@Test
+	void columnStoreRendersLikeTheRequests() throws Exception {
+		List<ACHPaymentRequest> requests = List.of(
+				new ACHPaymentRequest("Company A", 123456789L, 987654321L, "Zo\u00eb Sm\u00eeth and a very long name", "98765432", "12345678901234567890", 0.29, "debit", "USA Bank"),
+				new ACHPaymentRequest("Company A", 123456789L, 987654321L, null, "987654321", null, 1234.56, "debit", "USA Bank"));
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		achService.generateACHFile(requests.iterator(), out); // renders from the request objects
+		String fromRequests = out.toString(StandardCharsets.US_ASCII);
+		restartTraceSequences();
+		String fromColumns = achService.generateACHFile(requests);
+		assertEquals(fromColumns.substring(34), fromRequests.substring(34));
+		assertEquals("0000000029", fromColumns.split("\n")[2].substring(29, 39)); // exact cents
+		assertEquals("0000123456", fromColumns.split("\n")[3].substring(29, 39));
+	}
+
+	@Test
+	void padsToWholeBlocksAndCountsThem() {
+		List<ACHPaymentRequest> requests = new ArrayList<>();
+		for (int i = 0; i < 20; i++) {
+			requests.add(new ACHPaymentRequest("Company A", 123456789L, 987654321L, "Vendor " + i, "987654321", "1", 10, "debit", "USA Bank"));
+		}
+		String file = achService.generateACHFile(requests);
+		String[] lines = file.split("\n");
+		// 24 records padded to 3 blocks
+		assertEquals(30, lines.length);
+		assertEquals("000003", lines[23].substring(7, 13));
+		assertEquals("9".repeat(94), lines[29]);
+		assertTrue(file.endsWith("9"));
+	}
+
+	@Test
+	void splitsRunsIntoFilesWithinTheEntryLimit(@TempDir Path tempDir) throws Exception {
+		List<ACHPaymentRequest> requests = new ArrayList<>();
+		for (int i = 0; i < 20; i++) {
+			requests.add(new ACHPaymentRequest("Company " + (i % 2), 123456789L, 987654320L + (i % 2), "Vendor " + i,
+					String.valueOf(100000000 + i), String.valueOf(i), 100 + i, "credit", "USA Bank"));
+		}
+		ReflectionTestUtils.setField(achService, "maxEntriesPerFile", 7);
+		List<String> files = achService.writeACHFiles(requests, tempDir.toString(), false);
+
+		assertEquals(3, files.size());
+		Set<Character> fileIdModifiers = new HashSet<>();
+		Set<String> traceNumbers = new HashSet<>();
+		long entries = 0;
+		for (String file : files) {
+			ACHFileReport report = ACHFileVerifier.verify(Paths.get(file));
+			assertTrue(report.isValid(), report.getMismatches().toString());
+			assertTrue(report.getEntryAddendaCount() <= 7);
+			entries += report.getEntryAddendaCount();
+			List<String> lines = Files.readAllLines(Paths.get(file));
+			fileIdModifiers.add(lines.get(0).charAt(33));
+			lines.stream().filter(line -> line.startsWith("6")).forEach(line -> traceNumbers.add(line.substring(79)));
+		}
+		assertEquals(20, entries);
+		assertEquals(3, fileIdModifiers.size());
+		assertEquals(20, traceNumbers.size()); // trace numbers continue across the files
+	}
+
+	@Test
+	void laterGenerationsContinueTheTraceSequences() throws Exception {
+		String first = achService.generateACHFile(requests());
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		achService.generateACHFile(requests().iterator(), out);
+		String second = out.toString(StandardCharsets.US_ASCII);
+		assertEquals("987654320000001", first.split("\n")[2].substring(79));
+		assertEquals("987654320000002", first.split("\n")[3].substring(79));
+		assertEquals("987654320000003", second.split("\n")[2].substring(79));
+		assertEquals("987654320000004", second.split("\n")[3].substring(79));
+	}
+
+	@Test
+	void splitsFilesBeforeTheirTotalsOverflow(@TempDir Path tempDir) throws Exception {
+		List<ACHPaymentRequest> requests = new ArrayList<>();
+		for (int i = 0; i < 101; i++) {
+			requests.add(new ACHPaymentRequest("Company A", 123456789L, 987654321L, "Vendor " + i, "987654321", "1", 99999999.99, "credit", "USA Bank"));
+		}
+		List<String> files = achService.writeACHFiles(requests, tempDir.toString(), false);
+
+		assertEquals(2, files.size());
+		for (String file : files) {
+			ACHFileReport report = ACHFileVerifier.verify(Paths.get(file));
+			assertTrue(report.isValid(), report.getMismatches().toString());
+		}
+		// a single file cannot be split, so it is rejected before anything is written
+		ACHValidationException e = assertThrows(ACHValidationException.class, () -> achService.generateACHFile(requests));
+		assertEquals(100, e.getReport().getErrors().get(0).getIndex());
+	}
+
+	@Test
+	void gzipOutputHoldsTheSameRecords(@TempDir Path tempDir) throws Exception {
+		String plain = achService.writeACHFiles(requests(), tempDir.toString(), false).get(0);
+		restartTraceSequences();
+		String gzip = achService.writeACHFiles(requests(), tempDir.toString(), true).get(0);
+		assertTrue(gzip.endsWith(".txt.gz"));
+		try (InputStream in = new GZIPInputStream(Files.newInputStream(Paths.get(gzip)))) {
+			String unzipped = new String(in.readAllBytes(), StandardCharsets.US_ASCII);
+			String expected = Files.readString(Paths.get(plain));
+			// the second run gets the next file ID modifier of the day, every other byte is the same
+			assertEquals(expected.charAt(33) + 1, unzipped.charAt(33));
+			assertEquals(expected.substring(0, 33), unzipped.substring(0, 33));
+			assertEquals(expected.substring(34), unzipped.substring(34));
+		}
+	}
+}
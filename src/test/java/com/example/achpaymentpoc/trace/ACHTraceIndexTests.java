@@ -0,0 +1,110 @@
+package com.example.achpaymentpoc.trace;
+
+import com.example.achpaymentpoc.dto.ACHPaymentRequest;
+import com.example.achpaymentpoc.services.impl.ACHServiceImpl;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ACHTraceIndexTests {
+
+	@TempDir
+	Path tempDir;
+
+	private Path generate(String name) throws Exception {
+		List<ACHPaymentRequest> requests = new ArrayList<>();
+		for (int i = 0; i < 30; i++) {
+			requests.add(new ACHPaymentRequest("Company " + (i % 3), 123456789L, 987654320L + (i % 3), "Vendor " + i,
+					String.valueOf(100000000 + i), String.valueOf(i), 100 + i, i % 2 == 0 ? "credit" : "debit", "USA Bank"));
+		}
+		Path file = tempDir.resolve(name);
+		new ACHServiceImpl().writeACHFile(requests, file.toString());
+		return file;
+	}
+
+	@Test
+	void findsTheRecordOfATraceNumberAfterARestart() throws Exception {
+		Path file = generate("ach.txt");
+		ACHTraceIndex index = new ACHTraceIndex(tempDir.resolve("index/traces.catalog").toString());
+		index.open();
+		index.index(file);
+		assertTrue(Files.exists(tempDir.resolve("ach.txt" + ACHTraceIndex.SUFFIX)));
+
+		List<String> lines = Files.readAllLines(file);
+		String entry = lines.stream().filter(line -> line.startsWith("6") && line.contains("Vendor 7 ")).findFirst().orElseThrow();
+		long traceNumber = Long.parseLong(entry.substring(79));
+
+		ACHTraceIndex reopened = new ACHTraceIndex(tempDir.resolve("index/traces.catalog").toString());
+		reopened.open();
+		ACHTraceRecord record = reopened.find(traceNumber).orElseThrow();
+		assertEquals(entry, record.getRecord());
+		assertEquals(file.toAbsolutePath().toString(), record.getFilePath());
+		assertEquals(entry, lines.get((int) record.getLineNumber() - 1));
+		assertFalse(reopened.find(traceNumber + 1000000).isPresent());
+	}
+
+	@Test
+	void skipsAndRemovesTheTablesOfDeletedFiles() throws Exception {
+		Path older = generate("older.txt");
+		Path newer = generate("newer.txt"); // same trace numbers as the older file
+		ACHTraceIndex index = new ACHTraceIndex(tempDir.resolve("index/traces.catalog").toString());
+		index.open();
+		index.index(older);
+		index.index(newer);
+		String entry = Files.readAllLines(newer).stream().filter(line -> line.startsWith("6")).findFirst().orElseThrow();
+		long traceNumber = Long.parseLong(entry.substring(79));
+
+		Files.delete(newer);
+		assertEquals(older.toAbsolutePath().toString(), index.find(traceNumber).orElseThrow().getFilePath());
+		assertFalse(Files.exists(tempDir.resolve("newer.txt" + ACHTraceIndex.SUFFIX)));
+		assertEquals(1, index.fileCount());
+
+		Files.delete(older);
+		ACHTraceIndex reopened = new ACHTraceIndex(tempDir.resolve("index/traces.catalog").toString());
+		reopened.open();
+		assertEquals(0, reopened.fileCount());
+		assertFalse(reopened.find(traceNumber).isPresent());
+		assertFalse(Files.exists(tempDir.resolve("older.txt" + ACHTraceIndex.SUFFIX)));
+	}
+
+	@Test
+	void keepsOneCatalogLinePerTable() throws Exception {
+		Path first = generate("first.txt");
+		Path second = generate("second.txt");
+		Path catalog = tempDir.resolve("index/traces.catalog");
+		ACHTraceIndex index = new ACHTraceIndex(catalog.toString());
+		index.open();
+		index.index(first);
+		index.index(second);
+		index.index(first); // indexed again, moves after the second file
+		assertEquals(List.of(second.toAbsolutePath() + ACHTraceIndex.SUFFIX, first.toAbsolutePath() + ACHTraceIndex.SUFFIX),
+				Files.readAllLines(catalog));
+
+		Files.writeString(catalog, second.toAbsolutePath() + ACHTraceIndex.SUFFIX + "\n", StandardOpenOption.APPEND);
+		ACHTraceIndex reopened = new ACHTraceIndex(catalog.toString());
+		reopened.open();
+		assertEquals(2, reopened.fileCount());
+		assertEquals(2, Files.readAllLines(catalog).size()); // compacted on startup
+	}
+
+	@Test
+	void sortsColumnsTogetherByTraceNumber() {
+		long[] traces = {50, 10, 40, 10, 30, 20};
+		long[] offsets = {0, 1, 2, 3, 4, 5};
+		int[] batches = {0, 1, 2, 3, 4, 5};
+		ACHTraceIndex.sort(traces, offsets, batches, traces.length);
+		assertArrayEquals(new long[]{10, 10, 20, 30, 40, 50}, traces);
+		assertArrayEquals(new long[]{1, 3, 5, 4, 2, 0}, offsets); // stable
+		assertArrayEquals(new int[]{1, 3, 5, 4, 2, 0}, batches);
+	}
+}
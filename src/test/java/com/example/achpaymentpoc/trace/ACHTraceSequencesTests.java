@@ -0,0 +1,67 @@
+package com.example.achpaymentpoc.trace;
+
+import com.example.achpaymentpoc.dto.ACHPaymentRequest;
+import com.example.achpaymentpoc.services.impl.ACHServiceImpl;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class ACHTraceSequencesTests {
+
+	@TempDir
+	Path tempDir;
+
+	private ACHTraceSequences open(ACHTraceIndex traceIndex) throws Exception {
+		ACHTraceSequences sequences = new ACHTraceSequences(tempDir.resolve("index/trace-sequences").toString(), traceIndex);
+		sequences.open();
+		return sequences;
+	}
+
+	@Test
+	void countsEachOriginatingDfiSeparately() {
+		ACHTraceSequences sequences = new ACHTraceSequences();
+		assertEquals(0, sequences.allocate(98765432L, 3));
+		assertEquals(0, sequences.allocate(12345678L, 1));
+		assertEquals(3, sequences.allocate(98765432L, 2));
+		assertEquals(1, sequences.allocate(12345678L, 1));
+	}
+
+	@Test
+	void resumesAfterTheReservationAfterARestart() throws Exception {
+		ACHTraceSequences sequences = open(null);
+		assertEquals(0, sequences.allocate(98765432L, 5));
+
+		// the rest of the reserved block is skipped rather than handed out a second time
+		ACHTraceSequences reopened = open(null);
+		assertEquals(5 + ACHTraceSequences.RESERVATION, reopened.allocate(98765432L, 1));
+		assertEquals(0, reopened.allocate(12345678L, 1));
+	}
+
+	@Test
+	void startsFromTheHighestIndexedTraceNumbers() throws Exception {
+		List<ACHPaymentRequest> requests = new ArrayList<>();
+		for (int i = 0; i < 30; i++) {
+			requests.add(new ACHPaymentRequest("Company " + (i % 3), 123456789L, 987654320L + (i % 3), "Vendor " + i,
+					String.valueOf(100000000 + i), String.valueOf(i), 100 + i, "credit", "USA Bank"));
+		}
+		Path file = tempDir.resolve("ach.txt");
+		new ACHServiceImpl().writeACHFile(requests, file.toString());
+		ACHTraceIndex index = new ACHTraceIndex(tempDir.resolve("index/traces.catalog").toString());
+		index.open();
+		index.index(file);
+
+		assertEquals(30, open(index).allocate(98765432L, 1));
+	}
+
+	@Test
+	void startsOverWhenTheSequencesRunOut() {
+		ACHTraceSequences sequences = new ACHTraceSequences();
+		assertEquals(0, sequences.allocate(98765432L, ACHTraceSequences.MAX_SEQUENCE - 1));
+		assertEquals(0, sequences.allocate(98765432L, 2));
+	}
+}
@@ -0,0 +1,130 @@
+package com.example.achpaymentpoc.upload;
+
+import com.example.achpaymentpoc.metrics.ACHMetrics;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ACHFileUploaderTests {
+
+	@TempDir
+	Path tempDir;
+
+	private HttpServer server;
+	private final Map<String, ByteArrayOutputStream> received = new ConcurrentHashMap<>();
+	private final AtomicBoolean failNextChunk = new AtomicBoolean();
+	private ACHFileUploader uploader;
+
+	@BeforeEach
+	void startStubBank() throws IOException {
+		server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+		server.createContext("/upload/", this::handle);
+		server.start();
+
+		ACHUploadProperties properties = new ACHUploadProperties();
+		properties.setEndpoint("http://127.0.0.1:" + server.getAddress().getPort() + "/upload");
+		properties.setChunkSize(1000);
+		properties.setMaxConcurrentUploads(2);
+		properties.setRetryBackoff(Duration.ofMillis(1));
+		uploader = new ACHFileUploader(properties, ACHMetrics.noop());
+	}
+
+	@AfterEach
+	void stopStubBank() {
+		uploader.shutdown();
+		server.stop(0);
+	}
+
+	/**
+	 * Appends chunks that start at the persisted offset. When asked to fail, keeps only half of the chunk, answers
+	 * 503 and closes the connection, so the client has to resume from the middle of a chunk on a fresh one.
+	 */
+	private void handle(HttpExchange exchange) throws IOException {
+		try (exchange) {
+			respond(exchange);
+		}
+	}
+
+	private void respond(HttpExchange exchange) throws IOException {
+		String uploadId = exchange.getRequestURI().getPath().substring("/upload/".length());
+		ByteArrayOutputStream file = received.computeIfAbsent(uploadId, id -> new ByteArrayOutputStream());
+		synchronized (file) {
+			if (exchange.getRequestMethod().equals("PUT")) {
+				String range = exchange.getRequestHeaders().getFirst("Content-Range");
+				byte[] body = exchange.getRequestBody().readAllBytes();
+				long start = range.startsWith("bytes */") ? file.size() : Long.parseLong(range.substring(6, range.indexOf('-')));
+				if (start != file.size()) {
+					exchange.sendResponseHeaders(409, -1);
+					return;
+				}
+				if (body.length > 1 && failNextChunk.getAndSet(false)) {
+					file.write(body, 0, body.length / 2);
+					exchange.getResponseHeaders().set("Connection", "close");
+					exchange.sendResponseHeaders(503, -1);
+					return;
+				}
+				file.write(body);
+			}
+			exchange.getResponseHeaders().add(ACHFileUploader.UPLOAD_OFFSET, String.valueOf(file.size()));
+			exchange.sendResponseHeaders(200, -1);
+		}
+	}
+
+	private Path file(String name, int size) throws IOException {
+		byte[] bytes = new byte[size];
+		new Random(size).nextBytes(bytes);
+		return Files.write(tempDir.resolve(name), bytes);
+	}
+
+	@Test
+	void uploadsFileInChunks() throws IOException {
+		Path file = file("ach.txt", 4500);
+		ACHUploadResult result = uploader.upload(file);
+
+		assertEquals(5, result.getRequests());
+		assertEquals(0, result.getRetries());
+		assertArrayEquals(Files.readAllBytes(file), received.get(result.getUploadId()).toByteArray());
+	}
+
+	@Test
+	void resumesFromAcknowledgedOffsetAfterFailure() throws IOException {
+		Path file = file("ach.txt", 4500);
+		failNextChunk.set(true);
+		ACHUploadResult result = uploader.upload(file);
+
+		assertEquals(1, result.getRetries());
+		assertArrayEquals(Files.readAllBytes(file), received.get(result.getUploadId()).toByteArray());
+	}
+
+	@Test
+	void uploadsSeveralFilesConcurrently() throws IOException {
+		List<Path> files = List.of(file("a.txt", 2000), file("b.txt", 3000), file("c.txt", 0));
+		List<ACHUploadResult> results = uploader.uploadAll(files);
+
+		assertEquals(3, results.size());
+		for (int i = 0; i < files.size(); i++) {
+			assertEquals(files.get(i).toString(), results.get(i).getFilePath());
+			assertArrayEquals(Files.readAllBytes(files.get(i)), received.get(results.get(i).getUploadId()).toByteArray());
+			assertTrue(results.get(i).getThroughputBytesPerSecond() >= 0);
+		}
+	}
+}
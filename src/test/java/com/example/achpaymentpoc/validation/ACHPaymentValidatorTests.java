@@ -0,0 +1,90 @@
+package com.example.achpaymentpoc.validation;
+
+import com.example.achpaymentpoc.dto.ACHPaymentRequest;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ACHPaymentValidatorTests {
+
+	private static ACHPaymentRequest valid(int i) {
+		return new ACHPaymentRequest("Company A", 123456789L, 987654321L, "Vendor " + i, "011000015", "123456789", 1000.00, "debit", "USA Bank");
+	}
+
+	private static List<ACHPaymentRequest> requests(int size) {
+		List<ACHPaymentRequest> requests = new ArrayList<>(size);
+		for (int i = 0; i < size; i++) {
+			requests.add(valid(i));
+		}
+		return requests;
+	}
+
+	@Test
+	void checksRoutingNumberCheckDigit() {
+		assertTrue(ACHPaymentValidator.isValidRoutingNumber("011000015"));
+		assertFalse(ACHPaymentValidator.isValidRoutingNumber("011000016"));
+		assertFalse(ACHPaymentValidator.isValidRoutingNumber("01100001A"));
+	}
+
+	@Test
+	void collectsEveryErrorInIndexOrder() {
+		List<ACHPaymentRequest> requests = requests(100000);
+		requests.get(99999).setReceiverName("");
+		requests.get(20000).setAmount(0);
+		requests.get(20000).setTransactionType("refund");
+		requests.get(5).setReceiverRoutingNumber("98765432");
+
+		ACHValidationReport report = ACHPaymentValidator.validate(requests, ACHPaymentValidator.Mode.COLLECT_ALL);
+		assertEquals(100000, report.getCheckedCount());
+		assertEquals(4, report.getErrors().size());
+		assertEquals(5, report.getErrors().get(0).getIndex());
+		assertEquals("receiverRoutingNumber", report.getErrors().get(0).getField());
+		assertEquals("amount", report.getErrors().get(1).getField());
+		assertEquals("transactionType", report.getErrors().get(2).getField());
+		assertEquals(99999, report.getErrors().get(3).getIndex());
+	}
+
+	@Test
+	void failFastReportsOnlyTheFirstInvalidRequest() {
+		List<ACHPaymentRequest> requests = requests(100000);
+		requests.get(70000).setOriginatorCName(null);
+		requests.get(40000).setAmount(-1);
+		requests.get(40000).setReceiverName(null);
+
+		ACHValidationReport report = ACHPaymentValidator.validate(requests, ACHPaymentValidator.Mode.FAIL_FAST);
+		assertEquals(1, report.getErrors().size());
+		assertEquals(40000, report.getErrors().get(0).getIndex());
+		assertEquals("receiverName", report.getErrors().get(0).getField());
+	}
+
+	@Test
+	void rejectsAnEmptyList() {
+		ACHValidationReport report = ACHPaymentValidator.validate(List.of(), ACHPaymentValidator.Mode.COLLECT_ALL);
+		assertFalse(report.isValid());
+		assertEquals(0, report.getCheckedCount());
+		assertEquals("request", report.getErrors().get(0).getField());
+	}
+
+	@Test
+	void streamedRequestsFailAtTheFirstInvalidOne() {
+		List<ACHPaymentRequest> requests = requests(3);
+		requests.get(1).setReceiverRoutingNumber("011000016");
+		requests.get(2).setAmount(0);
+
+		Iterator<ACHPaymentRequest> validated = ACHPaymentValidator.validating(requests.iterator());
+		assertSame(requests.get(0), validated.next());
+		ACHValidationReport report = assertThrows(ACHValidationException.class, validated::next).getReport();
+		assertEquals(2, report.getCheckedCount());
+		assertEquals(1, report.getErrors().size());
+		assertEquals(1, report.getErrors().get(0).getIndex());
+		assertEquals("receiverRoutingNumber", report.getErrors().get(0).getField());
+	}
+}